@@ -22,6 +22,12 @@ public class BorkedAgent implements Agent{
    * */
   public String toString(){return "Bork";}
 
+  /**
+   * Seeds the agent's random number generator
+   * @param seed the seed
+   * */
+  public void seed(long seed){rand.setSeed(seed);}
+
 
   /**
    * Method called at the start of a round
@@ -0,0 +1,125 @@
+package agents;
+
+import loveletter.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * An agent that plays a policy trained by counterfactual regret minimisation
+ * (see {@link CfrTrainer}), looking up the strategy of its information set and
+ * sampling an action from it. The policy is for the two player game; in larger
+ * games, or in an information set the policy does not hold, the agent plays a
+ * uniformly random legal action other than discarding the Princess.
+ *
+ * The default constructor loads the policy file named by the system property
+ * loveletter.cfr.policy, or cfr.policy in the working directory, once for every
+ * agent in the JVM to share.
+ */
+public class CfrAgent implements Agent {
+
+	/** The system property naming the policy file of the default constructor */
+	public static final String POLICY_PROPERTY = "loveletter.cfr.policy";
+
+	private static CfrPolicy shared;
+	private static boolean loaded;
+
+	// builds the Matchups tables the policy's lookups use when the agent's class
+	// is loaded, rather than in its first playCard
+	static {
+		Matchups.init();
+	}
+
+	private final CfrPolicy policy;
+	private final ActionBuffer legal = new ActionBuffer();
+	private Rng rand;
+	private State current;
+
+	/**
+	 * Creates an agent playing the default policy file, or playing at random if
+	 * there is no such file.
+	 *
+	 * @throws IllegalStateException if the file exists but cannot be read as a
+	 *                               policy
+	 */
+	public CfrAgent() {
+		this(defaultPolicy());
+	}
+
+	/**
+	 * Creates an agent playing the given policy.
+	 *
+	 * @param policy the policy, or null to play at random
+	 */
+	public CfrAgent(CfrPolicy policy) {
+		this.policy = policy;
+		rand = Rng.xoshiro(System.nanoTime());
+	}
+
+	private static synchronized CfrPolicy defaultPolicy() {
+		if (!loaded) {
+			Path file = Paths.get(System.getProperty(POLICY_PROPERTY, "cfr.policy"));
+			try {
+				shared = Files.exists(file) ? CfrPolicy.load(file) : null;
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot load the policy " + file, e);
+			}
+			loaded = true;
+		}
+		return shared;
+	}
+
+	/**
+	 * Reports the agents name
+	 */
+	public String toString() {
+		return "CFR";
+	}
+
+	/**
+	 * Seeds the agent's random number generator
+	 *
+	 * @param seed the seed
+	 */
+	public void seed(long seed) {
+		rand = Rng.xoshiro(seed);
+	}
+
+	/**
+	 * Method called at the start of a round
+	 *
+	 * @param start the starting state of the round
+	 */
+	public void newRound(State start) {
+		current = start;
+	}
+
+	/**
+	 * Method called when any agent performs an action.
+	 *
+	 * @param act     the action an agent performs
+	 * @param results the state of play the agent is able to observe.
+	 */
+	public void see(Action act, State results) {
+		current = results;
+	}
+
+	/**
+	 * Perform an action after drawing a card from the deck
+	 *
+	 * @param c the card drawn from the deck
+	 * @return the action the agent chooses to perform
+	 */
+	public Action playCard(Card c) {
+		Action act = policy == null ? null : policy.choose(current, c, rand, legal);
+		if (act != null)
+			return act;
+		int n = current.legalActions(c, legal);
+		// the princess is always the last action, so avoid it if there is another
+		if (n > 1 && legal.card(n - 1) == Card.PRINCESS)
+			n--;
+		return legal.get(rand.nextInt(n));
+	}
+}
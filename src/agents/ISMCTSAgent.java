@@ -0,0 +1,316 @@
+package agents;
+
+import loveletter.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An agent that chooses its moves by information-set Monte Carlo tree search
+ * (single observer). Each iteration of the search deals the cards the agent
+ * cannot see at random, consistently with its view of the game and what it has
+ * learned from play (see {@link Determiniser}), and descends a tree of the real
+ * legal moves of that deal, so that the statistics of every move are gathered
+ * over many possible deals. The round is finished with random
+ * moves that never discard the Princess, and each move is credited with a win
+ * when the player who made it wins the round.
+ *
+ * The search may run several independent trees at once (root parallelism),
+ * whose visit counts are summed to choose the move, and stops when either its
+ * iteration budget or its time budget is spent.
+ */
+public class ISMCTSAgent implements Agent {
+
+	/** The exploration constant of the UCB1 selection rule */
+	private static final double EXPLORATION = 0.7;
+
+	private final int threads;
+	private final int iterations;
+	private final long budgetNanos;
+	private final Search[] searches;
+	private final ForkJoinTask<?>[] tasks;
+	private Xoshiro256 rand;
+	private final Determiniser sampler = new Determiniser();
+	private EndgameSolver endgame = new EndgameSolver();
+	private State current;
+
+	/**
+	 * Creates an agent that searches a single tree for up to 2000 iterations or
+	 * 4 milliseconds per move.
+	 */
+	public ISMCTSAgent() {
+		this(1, 2000, 4, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Creates an agent with the given search budget.
+	 *
+	 * @param threads    the number of trees searched at once, the first on the
+	 *                   agent's own thread and the rest in the common fork-join
+	 *                   pool
+	 * @param iterations the most iterations per move, shared between the trees
+	 * @param budget     the longest time spent on a move, measured from when
+	 *                   playCard is called
+	 * @param unit       the unit of the budget
+	 * @throws IllegalArgumentException if the number of threads or iterations
+	 *                                  is not positive
+	 */
+	public ISMCTSAgent(int threads, int iterations, long budget, TimeUnit unit) {
+		if (threads < 1 || iterations < 1)
+			throw new IllegalArgumentException("The search needs a thread and an iteration");
+		this.threads = threads;
+		this.iterations = iterations;
+		this.budgetNanos = unit.toNanos(budget);
+		searches = new Search[threads];
+		for (int i = 0; i < threads; i++)
+			searches[i] = new Search();
+		tasks = new ForkJoinTask<?>[threads];
+		rand = new Xoshiro256(System.nanoTime());
+	}
+
+	/**
+	 * Sets the solver that overrides the search near the end of a round, when it
+	 * can solve the round within its budget.
+	 *
+	 * @param endgame the solver, or null to always search
+	 */
+	public void setEndgame(EndgameSolver endgame) {
+		this.endgame = endgame;
+	}
+
+	/**
+	 * Reports the agents name
+	 */
+	public String toString() {
+		return "ISMCTS";
+	}
+
+	/**
+	 * Seeds the agent's random number generator
+	 *
+	 * @param seed the seed
+	 */
+	public void seed(long seed) {
+		rand = new Xoshiro256(seed);
+	}
+
+	/**
+	 * Method called at the start of a round
+	 *
+	 * @param start the starting state of the round
+	 **/
+	public void newRound(State start) {
+		current = start;
+		sampler.newRound(start);
+	}
+
+	/**
+	 * Method called when any agent performs an action.
+	 *
+	 * @param act     the action an agent performs
+	 * @param results the state of play the agent is able to observe.
+	 **/
+	public void see(Action act, State results) {
+		current = results;
+		sampler.see(act, results);
+	}
+
+	/**
+	 * Perform an action after drawing a card from the deck
+	 *
+	 * @param c the card drawn from the deck
+	 * @return the action the agent chooses to perform
+	 */
+	public Action playCard(Card c) {
+		ActionBuffer legal = searches[0].legal;
+		int n = current.legalActions(c, legal);
+		if (n == 1)
+			return legal.get(0);
+		long deadline = System.nanoTime() + budgetNanos;// the endgame solver's time counts against the budget
+		if (endgame != null && current.deckSize() <= EndgameSolver.MAX_DECK) {
+			Action solved = endgame.solve(sampler, c);
+			if (solved != null)
+				return solved;
+		}
+		sampler.prepare();// the trees share the sampler's tables
+		for (int i = 0; i < threads; i++) {
+			Search s = searches[i];
+			s.reset(c, rand.nextLong(), iterations / threads + (i < iterations % threads ? 1 : 0), deadline);
+			if (i > 0)
+				tasks[i] = ForkJoinPool.commonPool().submit(s);
+		}
+		searches[0].run();
+		for (int i = 1; i < threads; i++) {
+			tasks[i].join();
+			tasks[i] = null;
+		}
+		// sum the visits of each move over every tree, taking the moves from any
+		// tree that expanded them, as a tree that ran out of time may have missed some
+		Node best = null;
+		int bestVisits = -1;
+		double bestWins = 0;
+		for (int i = 0; i < threads; i++) {
+			Node root = searches[i].root;
+			for (int k = 0; k < root.size; k++) {
+				Node child = root.children[k];
+				if (counted(i, child.action))
+					continue;
+				int visits = 0;
+				double wins = 0;
+				for (int j = i; j < threads; j++) {
+					Node other = searches[j].root.child(child.action);
+					if (other != null) {
+						visits += other.visits;
+						wins += other.wins;
+					}
+				}
+				if (visits > bestVisits || (visits == bestVisits && wins > bestWins)) {
+					best = child;
+					bestVisits = visits;
+					bestWins = wins;
+				}
+			}
+		}
+		return best == null ? legal.get(0) : Action.of(best.action);
+	}
+
+	// whether a move was expanded by one of the trees before tree i, and so
+	// already counted
+	private boolean counted(int i, int action) {
+		for (int j = 0; j < i; j++)
+			if (searches[j].root.child(action) != null)
+				return true;
+		return false;
+	}
+
+	/**
+	 * A node of the search tree, reached by an action of a player from its parent
+	 */
+	private static final class Node {
+		final int action;
+		final int actor;
+		int visits;
+		int available;
+		double wins;
+		Node[] children = new Node[4];
+		int size;
+
+		Node(int action, int actor) {
+			this.action = action;
+			this.actor = actor;
+		}
+
+		Node child(int action) {
+			for (int i = 0; i < size; i++)
+				if (children[i].action == action)
+					return children[i];
+			return null;
+		}
+
+		Node add(int action, int actor) {
+			if (size == children.length)
+				children = java.util.Arrays.copyOf(children, size * 2);
+			Node child = new Node(action, actor);
+			children[size++] = child;
+			return child;
+		}
+	}
+
+	/**
+	 * One search tree and the buffers to search it, reused from move to move
+	 */
+	private final class Search implements Runnable {
+		final ActionBuffer legal = new ActionBuffer();
+		final Node[] path = new Node[17];
+		final int[] untried = new int[ActionBuffer.CAPACITY];
+		final Undo undo = new Undo();
+		Rng rng;
+		State game;
+		Card drawn;
+		Node root;
+		int budget;
+		long deadline;
+
+		void reset(Card drawn, long seed, int budget, long deadline) {
+			this.drawn = drawn;
+			this.budget = budget;
+			this.deadline = deadline;
+			rng = Rng.xoshiro(seed);
+			root = new Node(-1, -1);
+			if (game == null || game.numPlayers() != current.numPlayers())
+				game = sampler.newSample();
+		}
+
+		public void run() {
+			try {
+				for (int i = 0; i < budget && System.nanoTime() < deadline; i++)
+					iterate(sampler.sample(rng, game));
+			} catch (IllegalActionException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Descends the tree through moves of the given deal, expands one move, finishes
+		 * the round at random and credits the moves on the path with the result.
+		 */
+		void iterate(State game) throws IllegalActionException {
+			Node node = root;
+			int depth = 0;
+			Card card = drawn;// the observer's card is already drawn
+			boolean expanded = false;
+			while (!game.roundOver()) {
+				if (node != root || expanded)
+					card = game.drawCard();
+				int n = game.legalActions(card, legal);
+				int action;
+				if (expanded) {
+					action = rollout(n);
+				} else {
+					int tried = 0;
+					Node chosen = null;
+					double best = Double.NEGATIVE_INFINITY;
+					for (int i = 0; i < n; i++) {
+						Node child = node.child(legal.index(i));
+						if (child == null) {
+							untried[tried++] = legal.index(i);
+							continue;
+						}
+						child.available++;
+						double score = child.wins / child.visits
+								+ EXPLORATION * Math.sqrt(Math.log(child.available) / child.visits);
+						if (score > best) {
+							best = score;
+							chosen = child;
+						}
+					}
+					if (tried > 0) {// expand a move this deal allows that has not been tried
+						chosen = node.add(untried[rng.nextInt(tried)], game.nextPlayer());
+						chosen.available++;
+						expanded = true;
+					}
+					action = chosen.action;
+					path[depth++] = chosen;
+					node = chosen;
+				}
+				game.apply(Action.of(action), card, undo);
+			}
+			int winner = game.roundWinner();
+			for (int i = 0; i < depth; i++) {
+				Node visited = path[i];
+				visited.visits++;
+				if (visited.actor == winner)
+					visited.wins++;
+			}
+		}
+
+		/** Picks a random move that does not discard the Princess, if there is one */
+		int rollout(int n) {
+			int end = n;
+			while (end > 1 && legal.card(end - 1) == Card.PRINCESS)
+				end--;
+			return legal.index(rng.nextInt(end));
+		}
+	}
+}
@@ -11,10 +11,12 @@ public class RandomAgent implements Agent{
   private Random rand;
   private State current;
   private int myIndex;
+  private ActionBuffer legal;
 
   //0 place default constructor
   public RandomAgent(){
     rand  = new Random();
+    legal = new ActionBuffer();
   }
 
   /**
@@ -22,6 +24,12 @@ public class RandomAgent implements Agent{
    * */
   public String toString(){return "Rando";}
 
+  /**
+   * Seeds the agent's random number generator
+   * @param seed the seed
+   * */
+  public void seed(long seed){rand.setSeed(seed);}
+
 
   /**
    * Method called at the start of a round
@@ -48,41 +56,25 @@ public class RandomAgent implements Agent{
    * @throws IllegalActionException when the Action produced is not legal.
    * */
   public Action playCard(Card c){
-    Action act = null;
-    Card play;
-    while(!current.legalAction(act, c)){
-      if(rand.nextDouble()<0.5) play= c;
-      else play = current.getCard(myIndex);
-      int target = rand.nextInt(current.numPlayers());
-      try{
-        switch(play){
-          case GUARD:
-            act = Action.playGuard(myIndex, target, Card.values()[rand.nextInt(7)+1]);
-            break;
-          case PRIEST:
-            act = Action.playPriest(myIndex, target);
-            break;
-          case BARON:  
-            act = Action.playBaron(myIndex, target);
-            break;
-          case HANDMAID:
-            act = Action.playHandmaid(myIndex);
-            break;
-          case PRINCE:  
-            act = Action.playPrince(myIndex, target);
-            break;
-          case KING:
-            act = Action.playKing(myIndex, target);
-            break;
-          case COUNTESS:
-            act = Action.playCountess(myIndex);
-            break;
-          default:
-            act = null;//never play princess
-        }
-      }catch(IllegalActionException e){/*do nothing*/}
-    }
-    return act;
+    int n = current.legalActions(c, legal);
+    //weight each action as the original retry loop did, which picked either card with equal chance,
+    //then any player as the target and any guess for a guard, until the action was legal,
+    //so a card counts by the share of its targets that are legal. The unit is 1/(7*numPlayers) of a card
+    int num = current.numPlayers(), total = 0;
+    for(int i = 0; i<n; i++) total += weight(i, num);
+    if(total==0) return legal.get(0);
+    int r = rand.nextInt(total);
+    int i = 0;
+    while((r -= weight(i, num))>=0) i++;
+    return legal.get(i);
+  }
+
+  //the weight of a legal action, never playing the princess
+  private int weight(int i, int num){
+    Card card = legal.card(i);
+    if(card==Card.PRINCESS) return 0;
+    if(legal.target(i)==-1) return 7*num;
+    return card==Card.GUARD?1:7;
   }
 }
 
@@ -20,10 +20,19 @@ public class TimsAgent implements Agent {
 	private final int UNIQUE_CARD_COUNT = 8;
 	private PlayerState[] playerStates;
 	private int[] cardCounts;
+	// the histogram of cardCounts, for looking up chances in the Matchups tables
+	private int remaining;
+	private ActionBuffer legalActions = new ActionBuffer();
 	private Random rand;
 	private State current;
 	private int myIndex;
 
+	// builds the Matchups tables when the agent's class is loaded, rather than in
+	// its first newRound, where the time counts against its deadline
+	static {
+		Matchups.init();
+	}
+
 	private class WeightedAction {
 		public Action action;
 		public float weight;
@@ -35,7 +44,8 @@ public class TimsAgent implements Agent {
 	}
 
 	private class PlayerState {
-		private int[] potentialCardCount;
+		// the histogram of the cards this player may hold
+		private int potential = Matchups.FULL;
 		public final int playerIndex;
 		// this increases as this player targets us, used as a tie breaker
 		public int threat = 0;
@@ -49,10 +59,6 @@ public class TimsAgent implements Agent {
 		 */
 		public PlayerState(int playerIndex) {
 			this.playerIndex = playerIndex;
-			potentialCardCount = new int[CARD_VALUES.length];
-			for (int i = 0; i < CARD_VALUES.length; i++) {
-				potentialCardCount[i] = CARD_VALUES[i].count();
-			}
 		}
 
 		/**
@@ -64,7 +70,7 @@ public class TimsAgent implements Agent {
 			if (act.target() == myIndex) {
 				threat++;
 			}
-			potentialCardCount[act.card().ordinal()]--;
+			potential = Matchups.remove(potential, act.card());
 		}
 
 		/**
@@ -75,8 +81,7 @@ public class TimsAgent implements Agent {
 		 * @return The probability Card c is in the given players hand
 		 */
 		public float getProb(Card c) {
-			int i = c.ordinal();
-			return (float)potentialCardCount[i] / (float)CARD_VALUES[i].count();
+			return (float)Matchups.count(potential, c) / (float)c.count();
 		}
 
 		/**
@@ -88,17 +93,8 @@ public class TimsAgent implements Agent {
 			if (knownCard != null) {
 				return knownCard;
 			}
-			float maxProb = -Float.MAX_VALUE;
-			int maxProbIndex = 0;
-			for (int i = 0; i < potentialCardCount.length; i++) {
-				float prob = (float)potentialCardCount[i] / (float)CARD_VALUES[i].count();
-				// >= means the higher value card is always chosen
-				if (prob >= maxProb) {
-					maxProb = prob;
-					maxProbIndex = i;
-				}
-			}
-			return CARD_VALUES[maxProbIndex];
+			// the higher value card is always chosen on a tie
+			return Matchups.likeliest(potential);
 		}
 
 		/**
@@ -110,15 +106,7 @@ public class TimsAgent implements Agent {
 			if (knownCard != null) {
 				return 1;
 			}
-			float maxProb = -Float.MAX_VALUE;
-			for (int i = 0; i < potentialCardCount.length; i++) {
-				float prob = potentialCardCount[i] / CARD_VALUES[i].count();
-				// >= means the higher value card is always chosen
-				if (prob >= maxProb) {
-					maxProb = prob;
-				}
-			}
-			return maxProb;
+			return Matchups.likeliestShare(potential);
 		}
 	}
 
@@ -134,6 +122,15 @@ public class TimsAgent implements Agent {
 		return "Tim";
 	}
 
+	/**
+	 * Seeds the agent's random number generator
+	 * 
+	 * @param seed the seed
+	 */
+	public void seed(long seed) {
+		rand.setSeed(seed);
+	}
+
 	/**
 	 * Method called at the start of a round
 	 * 
@@ -148,6 +145,7 @@ public class TimsAgent implements Agent {
 		for (int i = 0; i < CARD_VALUES.length; i++) {
 			cardCounts[i] = CARD_VALUES[i].count();
 		}
+		remaining = Matchups.FULL;
 		playerStates = new PlayerState[start.numPlayers()];
 		for (int i = 0; i < current.numPlayers(); i++) {
 			if (i != myIndex) {
@@ -178,6 +176,7 @@ public class TimsAgent implements Agent {
 	public void see(Action act, State results) {
 		current = results;
 		cardCounts[act.card().ordinal()]--;
+		remaining = Matchups.remove(remaining, act.card());
 		updatePlayerStates(act);
 		// when we play the priest
 		if (act.card() == Card.PRIEST && act.player() == myIndex) {
@@ -199,20 +198,11 @@ public class TimsAgent implements Agent {
 	}
 
 	private int maxValue(Card c1, Card c2) {
-		return Math.max(c1.value(), c1.value());
+		return Math.max(c1.value(), c2.value());
 	}
 
 	private float avgDeckValue() {
-		float sum = 0;
-		int count = 0;
-		for (int i = 0; i < cardCounts.length; i++) {
-			if (cardCounts[i] > 0) {
-				Card c = CARD_VALUES[i];
-				sum += c.value();
-				count += cardCounts[i];
-			}
-		}
-		return sum / count;
+		return Matchups.princeValue(remaining);
 	}
 
 	/**
@@ -487,20 +477,9 @@ public class TimsAgent implements Agent {
 		// card
 		// @formatter:on
 
-		// how many cards can still be dealt with a value greater than 4?
-		int lowCount = 0;
-		for (int i = 0; i < 4; i++) { // ending point of 4 is the index of prince (NOT VALUE), the first card to have
-										// value over 4
-			lowCount += cardCounts[i];
-		}
-		// how many cards can still be dealt with a value less than or equal to 4?
-		int highCount = 0;
-		for (int i = 4; i < cardCounts.length; i++) { // starting point of 4 is the index of prince (NOT VALUE), the
-														// first card to
-														// have value over 4
-			highCount += cardCounts[i];
-		}
-		float forcedChance = highCount / (highCount + lowCount);
+		// the chance the card they are dealt has a value greater than 4, which is the
+		// chance it beats a handmaid
+		float forcedChance = Matchups.baronLoss(remaining, Card.HANDMAID);
 		if (forcedChance > 0.5) {
 			// they will probably play the countess next turn, leave them alone
 			// players only ever have 1 card in their hand, so we cannot attempt to attack
@@ -627,6 +606,15 @@ public class TimsAgent implements Agent {
 
 	private Card guardGuessFromRemaining() {
 		Card guess = Card.GUARD;
+		boolean nonGuardLeft = false; // the loop below never ends if only guards remain
+		for (int i = 0; i < cardCounts.length; i++) {
+			if (CARD_VALUES[i] != Card.GUARD && cardCounts[i] > 0) {
+				nonGuardLeft = true;
+			}
+		}
+		if (!nonGuardLeft) {
+			return Card.PRIEST;
+		}
 		while (guess == Card.GUARD) {
 			int ccIndex = rand.nextInt(cardCounts.length);
 			if (cardCounts[ccIndex] > 0) {
@@ -650,46 +638,36 @@ public class TimsAgent implements Agent {
 														// instead?
 		}
 
-		Action act = null;
-		Card play = null;
-		while (!current.legalAction(act, play) || act == null) {
-			// default to a random action if we have to
-			play = rand.nextDouble() < 0.5 ? hand : dealt;
-			// dont target ourselves
-			int target = rand.nextInt(current.numPlayers());
-			while (target == myIndex) {
-				target = rand.nextInt(current.numPlayers());
+		// default to a random legal action if we have to
+		int n = current.legalActions(dealt, legalActions);
+		int chosen = -1;
+		int seen = 0;
+		for (int i = 0; i < n; i++) {
+			Card play = legalActions.card(i);
+			// dont target ourselves, never play princess and consider each guard target
+			// once, the guess is decided below
+			if (play == Card.PRINCESS || legalActions.target(i) == myIndex
+					|| (play == Card.GUARD && legalActions.guess(i) != Card.PRIEST)) {
+				continue;
 			}
-			switch (play) {
-			case GUARD:
-				Card guess = playerStates[target].getMostLikely();
-				// we cannot guess guard so pick a random guess
-				while (guess == Card.GUARD) {
-					guess = guardGuessFromRemaining();
-				}
-				act = Action.playGuard(myIndex, target, guess);
-				break;
-			case PRIEST:
-				act = Action.playPriest(myIndex, target); // shouldnt get here
-				break;
-			case BARON:
-				act = Action.playBaron(myIndex, target);
-				break;
-			case HANDMAID:
-				act = Action.playHandmaid(myIndex); // shouldnt get here
-				break;
-			case PRINCE:
-				act = Action.playPrince(myIndex, target);
-				break;
-			case KING:
-				act = Action.playKing(myIndex, target);
-				break;
-			case COUNTESS:
-				act = Action.playCountess(myIndex);
-				break;
-			default:
-				act = null;// never play princess
+			if (rand.nextInt(++seen) == 0) {
+				chosen = i;
+			}
+		}
+		if (chosen == -1) {
+			// every other action is impossible, e.g. a prince when all opponents are
+			// protected. The princess is always the last action, so avoid it if we can
+			chosen = 0;
+		}
+		Action act = legalActions.get(chosen);
+		if (act.card() == Card.GUARD) {
+			int target = act.target();
+			Card guess = playerStates[target].getMostLikely();
+			// we cannot guess guard so pick a random guess
+			while (guess == Card.GUARD) {
+				guess = guardGuessFromRemaining();
 			}
+			act = Action.playGuard(myIndex, target, guess);
 		}
 		return act;
 	}
@@ -0,0 +1,320 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import agents.CfrAgent;
+import agents.RandomAgent;
+import agents.TimsAgent;
+import loveletter.*;
+
+/**
+ * Benchmarks of the game engine and the provided agents, reporting throughput and allocation.
+ * Run with optional arguments: a filter on the benchmark names, 
+ * the warm up time and the measurement time in milliseconds.
+ * Positions are generated from seeded random games, so every run measures the same work.
+ * **/
+public class EngineBenchmarks{
+
+  private static final int POOL = 256; //the number of positions per benchmark, a power of 2
+
+  /**
+   * A game paused at a decision, after the next player has drawn a card.
+   * **/
+  private static class Position{
+    private State game;
+    private Card drawn;
+    private Undo saved = new Undo(); //the state of the game at the decision
+    private Action action; //a legal action at the decision
+  }
+
+  private interface Filter{
+    boolean accept(ActionBuffer legal, int i);
+  }
+
+  /**
+   * Generates positions from seeded random games.
+   * @param seed the seed of the games
+   * @param count the number of positions to generate
+   * @param filter selects the legal actions a position may be generated for
+   * @return the positions
+   * **/
+  private static Position[] positions(long seed, int count, Filter filter){
+    Random random = new Random(seed);
+    ActionBuffer legal = new ActionBuffer();
+    List<Position> found = new ArrayList<>();
+    try{
+      while(found.size()<count){
+        int num = 2+random.nextInt(3);
+        Agent[] agents = new Agent[num];
+        for(int p = 0; p<num; p++) agents[p] = new RandomAgent();
+        State game = new State(Rng.xoshiro(random.nextLong()), agents);
+        int stop = random.nextInt(12);//pause at a random point of the round
+        for(int step = 0; !game.roundOver(); step++){
+          Card drawn = game.drawCard();
+          int n = game.legalActions(drawn, legal);
+          if(step>=stop){
+            int first = random.nextInt(n);
+            Position pos = null;
+            for(int k = 0; k<n && pos==null; k++){
+              int i = (first+k)%n;
+              if(filter.accept(legal, i)){
+                pos = new Position();
+                pos.game = game;
+                pos.drawn = drawn;
+                pos.action = legal.get(i);
+                game.save(pos.saved);
+                found.add(pos);
+              }
+            }
+            if(pos!=null) break;//leave the game paused at the position
+          }
+          game.play(legal.get(random.nextInt(n)), drawn, new Outcome());
+        }
+      }
+    }catch(IllegalActionException e){
+      throw new IllegalStateException(e);
+    }
+    return found.toArray(new Position[0]);
+  }
+
+  /**
+   * Generates games that have been played to the end of the round.
+   * @param seed the seed of the games
+   * @param count the number of games
+   * @return the finished games
+   * **/
+  private static State[] finishedRounds(long seed, int count){
+    Random random = new Random(seed);
+    ActionBuffer legal = new ActionBuffer();
+    State[] games = new State[count];
+    try{
+      for(int g = 0; g<count; g++){
+        Agent[] agents = new Agent[2+random.nextInt(3)];
+        for(int p = 0; p<agents.length; p++) agents[p] = new RandomAgent();
+        State game = new State(Rng.xoshiro(random.nextLong()), agents);
+        while(!game.roundOver()){
+          Card drawn = game.drawCard();
+          game.play(legal.get(random.nextInt(game.legalActions(drawn, legal))), drawn, new Outcome());
+        }
+        games[g] = game;
+      }
+    }catch(IllegalActionException e){
+      throw new IllegalStateException(e);
+    }
+    return games;
+  }
+
+  /**
+   * Binds an agent to each position, as if it were the agent's turn.
+   * @param positions the positions
+   * @param agents the agent for each position
+   * **/
+  private static void bind(Position[] positions, Agent[] agents){
+    try{
+      for(int i = 0; i<positions.length; i++){
+        State game = positions[i].game;
+        game.undo(positions[i].saved);
+        agents[i].seed(i);
+        agents[i].newRound(game.playerState(game.nextPlayer()));
+      }
+    }catch(IllegalActionException e){
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static void main(String[] args){
+    String filter = args.length>0?args[0]:"";
+    long warmup = args.length>1?Long.parseLong(args[1]):1000;
+    long measure = args.length>2?Long.parseLong(args[2]):2000;
+    Harness harness = new Harness(warmup, measure);
+    harness.header();
+    int mask = POOL-1;
+
+    if("Card.deal(Random)".contains(filter)){
+      Random random = new Random(1);
+      harness.run("Card.deal(Random)", 1000, n -> {
+        long h = 0;
+        for(int i = 0; i<n; i++) h += Card.deal(random)[0].ordinal();
+        return h;
+      });
+    }
+    if("Card.deal(Rng,Card[])".contains(filter)){
+      Rng rng = Rng.xoshiro(1);
+      Card[] deck = new Card[16];
+      harness.run("Card.deal(Rng,Card[])", 1000, n -> {
+        long h = 0;
+        for(int i = 0; i<n; i++) h += Card.deal(rng, deck)[0].ordinal();
+        return h;
+      });
+    }
+    if("State.playerState".contains(filter)){
+      Position[] pool = positions(2, POOL, (legal, i) -> true);
+      harness.run("State.playerState", 1000, n -> {
+        long h = 0;
+        try{
+          for(int i = 0; i<n; i++){
+            State game = pool[i&mask].game;
+            h += game.playerState(i%game.numPlayers()).getPlayerIndex();
+          }
+        }catch(IllegalActionException e){throw new IllegalStateException(e);}
+        return h;
+      });
+    }
+    for(Card card: Card.values()){
+      String name = "State.update("+card+")";
+      if(!name.contains(filter)) continue;
+      Position[] pool = positions(3+card.ordinal(), POOL, (legal, i) -> legal.card(i)==card);
+      harness.run(name, 1000, n -> {
+        long h = 0;
+        try{
+          for(int i = 0; i<n; i++){
+            Position pos = pool[i&mask];
+            pos.game.undo(pos.saved);
+            h += pos.game.update(pos.action, pos.drawn).length();
+          }
+        }catch(IllegalActionException e){throw new IllegalStateException(e);}
+        return h;
+      });
+    }
+    if("State.play(any card)".contains(filter)){
+      Position[] pool = positions(11, POOL, (legal, i) -> true);
+      Outcome outcome = new Outcome();
+      harness.run("State.play(any card)", 1000, n -> {
+        long h = 0;
+        try{
+          for(int i = 0; i<n; i++){
+            Position pos = pool[i&mask];
+            pos.game.undo(pos.saved);
+            pos.game.play(pos.action, pos.drawn, outcome);
+            h += outcome.subject();
+          }
+        }catch(IllegalActionException e){throw new IllegalStateException(e);}
+        return h;
+      });
+    }
+    if("State.unseenCards".contains(filter)){
+      Position[] pool = positions(12, POOL, (legal, i) -> true);
+      for(Position pos: pool) try{pos.game.undo(pos.saved);}catch(IllegalActionException e){throw new IllegalStateException(e);}
+      harness.run("State.unseenCards", 1000, n -> {
+        long h = 0;
+        for(int i = 0; i<n; i++) h += pool[i&mask].game.unseenCards().length;
+        return h;
+      });
+    }
+    if("Determiniser.sample".contains(filter)){
+      Position[] pool = positions(19, POOL, (legal, i) -> true);
+      Determiniser[] samplers = new Determiniser[POOL];
+      State[] samples = new State[POOL];
+      try{
+        for(int i = 0; i<POOL; i++){
+          State game = pool[i].game;
+          game.undo(pool[i].saved);
+          samplers[i] = new Determiniser();
+          samplers[i].newRound(game.playerState(game.nextPlayer()));
+          samplers[i].prepare();
+          samples[i] = samplers[i].newSample();
+        }
+      }catch(IllegalActionException e){throw new IllegalStateException(e);}
+      Rng rng = Rng.xoshiro(19);
+      harness.run("Determiniser.sample", 1000, n -> {
+        long h = 0;
+        for(int i = 0; i<n; i++) h += samplers[i&mask].sample(rng, samples[i&mask]).nextPlayer();
+        return h;
+      });
+    }
+    if("State.roundWinner".contains(filter)){
+      State[] pool = finishedRounds(13, POOL);
+      harness.run("State.roundWinner", 1000, n -> {
+        long h = 0;
+        for(int i = 0; i<n; i++) h += pool[i&mask].roundWinner();
+        return h;
+      });
+    }
+    if("RandomAgent.playCard".contains(filter)){
+      Position[] pool = positions(14, POOL, (legal, i) -> true);
+      Agent[] agents = new Agent[POOL];
+      for(int i = 0; i<POOL; i++) agents[i] = new RandomAgent();
+      bind(pool, agents);
+      harness.run("RandomAgent.playCard", 1000, n -> {
+        long h = 0;
+        for(int i = 0; i<n; i++) h += agents[i&mask].playCard(pool[i&mask].drawn).index();
+        return h;
+      });
+    }
+    if("TimsAgent.playCard".contains(filter)){
+      Position[] pool = positions(15, POOL, (legal, i) -> true);
+      Agent[] agents = new Agent[POOL];
+      for(int i = 0; i<POOL; i++) agents[i] = new TimsAgent();
+      bind(pool, agents);
+      harness.run("TimsAgent.playCard", 1000, n -> {
+        long h = 0;
+        for(int i = 0; i<n; i++){
+          Action act = agents[i&mask].playCard(pool[i&mask].drawn);
+          h += act==null?0:act.index();
+        }
+        return h;
+      });
+    }
+    if("CfrAgent.playCard".contains(filter)){
+      CfrTrainer trainer = new CfrTrainer(16);
+      trainer.train(2000, 1, 20);
+      CfrPolicy policy = trainer.policy();
+      Position[] pool = positions(20, 4*POOL, (legal, i) -> true);
+      List<Position> twoPlayer = new ArrayList<>();
+      for(Position pos: pool)
+        if(pos.game.numPlayers()==2 && twoPlayer.size()<POOL) twoPlayer.add(pos);
+      Position[] games = twoPlayer.toArray(new Position[0]);
+      Agent[] agents = new Agent[games.length];
+      for(int i = 0; i<games.length; i++) agents[i] = new CfrAgent(policy);
+      bind(games, agents);
+      int size = games.length;
+      harness.run("CfrAgent.playCard", 1000, n -> {
+        long h = 0;
+        for(int i = 0; i<n; i++) h += agents[i%size].playCard(games[i%size].drawn).index();
+        return h;
+      });
+    }
+    if("State rollout(4p)".contains(filter)){
+      Rng rng = Rng.xoshiro(17);
+      ActionBuffer legal = new ActionBuffer();
+      Outcome outcome = new Outcome();
+      Agent[] agents = {new RandomAgent(), new RandomAgent(), new RandomAgent(), new RandomAgent()};
+      harness.run("State rollout(4p)", 100, n -> {
+        long h = 0;
+        try{
+          for(int i = 0; i<n; i++){//a uniformly random legal action at every turn of a fresh round
+            State game = new State(rng, agents);
+            while(!game.roundOver()){
+              Card drawn = game.drawCard();
+              game.play(legal.get(rng.nextInt(game.legalActions(drawn, legal))), drawn, outcome);
+            }
+            h += game.roundWinner();
+          }
+        }catch(IllegalActionException e){throw new IllegalStateException(e);}
+        return h;
+      });
+    }
+    if("LockstepSimulator rollout(4p)".contains(filter)){
+      LockstepSimulator sim = new LockstepSimulator(1024, 4, 18);
+      harness.run("LockstepSimulator rollout(4p)", 1024, n -> {
+        long h = 0;
+        for(int i = 0; i<n; i += 1024){//each operation is one of 1024 rounds played together
+          sim.deal();
+          sim.run();
+          h += sim.winner(i&1023);
+        }
+        return h;
+      });
+    }
+    if("LoveLetter.playGame(4 Rando)".contains(filter)){
+      Agent[] agents = {new RandomAgent(), new RandomAgent(), new RandomAgent(), new RandomAgent()};
+      Rng seeds = Rng.xoshiro(16);
+      harness.run("LoveLetter.playGame(4 Rando)", 10, n -> {
+        long h = 0;
+        for(int i = 0; i<n; i++) h += new LoveLetter(Rng.xoshiro(seeds.nextInt(Integer.MAX_VALUE)), null).playGame(agents)[0];
+        return h;
+      });
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * A minimal benchmark harness, measuring the throughput and allocation rate of an operation.
+ * Each benchmark is warmed up, then run in timed batches on the calling thread.
+ * Allocation is measured with the per-thread allocation counter of the HotSpot ThreadMXBean,
+ * which is the same figure reported by the JMH GC profiler.
+ * This is not JMH: every benchmark shares one JVM, results are consumed by a volatile field rather than a blackhole,
+ * and each reports a single mean with no error bounds, so the figures are rough guides for comparing runs.
+ * **/
+public class Harness{
+
+  /**
+   * An operation to be benchmarked
+   * */
+  public interface Op{
+    /**
+     * Performs the operation a number of times.
+     * @param iterations the number of times to perform the operation
+     * @return a value depending on the results, so the work cannot be optimised away
+     * */
+    public long run(int iterations);
+  }
+
+  private static volatile long sink; //consumes the results of operations
+
+  private long warmupMillis;
+  private long measureMillis;
+  private com.sun.management.ThreadMXBean threads; //null if allocation cannot be measured
+
+  /**
+   * Creates a harness.
+   * @param warmupMillis the time each benchmark is run before measuring
+   * @param measureMillis the time each benchmark is measured for
+   * **/
+  public Harness(long warmupMillis, long measureMillis){
+    this.warmupMillis = warmupMillis;
+    this.measureMillis = measureMillis;
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if(bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()){
+      threads = (com.sun.management.ThreadMXBean)bean;
+      threads.setThreadAllocatedMemoryEnabled(true);
+    }
+  }
+
+  /**
+   * Prints the header of the table of results.
+   * **/
+  public void header(){
+    System.out.printf("%-32s %14s %12s %12s %12s%n", "Benchmark", "ops/s", "ns/op", "B/op", "MB/s alloc");
+  }
+
+  /**
+   * Benchmarks an operation and prints a row of results.
+   * @param name the name of the benchmark
+   * @param batch the number of iterations between checks of the clock
+   * @param op the operation
+   * **/
+  public void run(String name, int batch, Op op){
+    long end = System.nanoTime()+warmupMillis*1000000L;
+    while(System.nanoTime()<end) sink += op.run(batch);
+    long ops = 0;
+    long bytes = allocated();
+    long start = System.nanoTime();
+    end = start+measureMillis*1000000L;
+    long now;
+    do{
+      sink += op.run(batch);
+      ops += batch;
+    }while((now = System.nanoTime())<end);
+    bytes = allocated()-bytes;
+    double seconds = (now-start)/1e9;
+    if(threads==null)
+      System.out.printf("%-32s %14.0f %12.1f %12s %12s%n", name, ops/seconds, (now-start)/(double)ops, "n/a", "n/a");
+    else
+      System.out.printf("%-32s %14.0f %12.1f %12.1f %12.1f%n", name, ops/seconds, (now-start)/(double)ops,
+        (double)bytes/ops, bytes/seconds/1e6);
+  }
+
+  private long allocated(){
+    return threads==null?0:threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
@@ -3,9 +3,32 @@ package loveletter;
 /**
  * An abstract class to represent actions in the game LoveLetter.
  * The class is designed to be immutable.
+ * Every possible action is created once, in a table indexed by card, player, target and guess,
+ * and the static play methods return the canonical instance from the table.
  * @author Tim French
  **/
 public class Action{
+
+  /**The number of action indices, 8 cards by 4 players by 5 targets (including none) by 8 guesses (including none)**/
+  public static final int COUNT = 8*4*5*8;
+
+  //the canonical actions, or null for indices that do not describe a valid action
+  private static final Action[] TABLE = new Action[COUNT];
+  static{
+    Card[] cards = Card.values();
+    for(Card c: cards)
+      for(int p = 0; p<4; p++)
+        for(int t = -1; t<4; t++)
+          for(int g = 0; g<8; g++){
+            Card guess = g==0?null:cards[g];
+            if(check(c, p, t, guess)==Legality.LEGAL){
+              try{
+                TABLE[index(c.ordinal(), p, t, g)] = new Action(c, p, t, guess);
+              }catch(IllegalActionException e){/*unreachable code, the action is valid*/}
+            }
+          }
+  }
+
   //the player performing the action
   private Card card;
   //the player's name (for nice formatting)
@@ -14,6 +37,8 @@ public class Action{
   private int target;
   //The position of the card played/discarded
   private Card guess;
+  //The position of the action in the table
+  private int index;
 
   /**
    * Private constructor for creating a new action.
@@ -32,6 +57,76 @@ public class Action{
     this.player = player;
     this.target = target;
     this.guess = guess;
+    this.index = index(card.ordinal(), player, target, guess==null?0:guess.ordinal());
+  }
+
+  /**
+   * Computes the table index of an action.
+   * @param card the ordinal of the card played
+   * @param player the player performing the action
+   * @param target the target of the action, or -1
+   * @param guess the ordinal of the guessed card, or 0 if there is no guess
+   * @return the index of the action
+   * **/
+  static int index(int card, int player, int target, int guess){
+    return ((card*4+player)*5+target+1)*8+guess;
+  }
+
+  /**
+   * Checks whether the arguments describe an action that may be constructed,
+   * without throwing an exception.
+   * @param card the card being played
+   * @param player the player performing the action
+   * @param target the player targetted by this action, or -1 for the handmaid, countess and princess
+   * @param guess the card guessed in a guard action, and null otherwise
+   * @return Legality.LEGAL if the action is valid, or the reason it is not.
+   * **/
+  public static Legality check(Card card, int player, int target, Card guess){
+    if(card==null) return Legality.NULL_CARD;
+    if(player<0 || player>3 || target<-1 || target>3) return Legality.PLAYER_OUT_OF_RANGE;
+    switch(card){
+      case GUARD: 
+        if(target==-1) return Legality.NO_TARGET;
+        if(player==target) return Legality.SELF_TARGET;
+        if(guess==null) return Legality.NULL_GUESS;
+        if(guess==Card.GUARD) return Legality.GUARD_GUESS;
+        return Legality.LEGAL;
+      case PRIEST: 
+      case BARON: 
+      case KING: 
+        if(target==-1) return Legality.NO_TARGET;
+        if(player==target) return Legality.SELF_TARGET;
+        break;
+      case PRINCE: 
+        if(target==-1) return Legality.NO_TARGET;
+        break;
+      default: 
+        if(target!=-1) return Legality.UNEXPECTED_TARGET;
+    }
+    return guess==null?Legality.LEGAL:Legality.UNEXPECTED_GUESS;
+  }
+
+  /**
+   * Looks up the canonical instance of an action. No object is created.
+   * @param card the card being played
+   * @param player the player performing the action
+   * @param target the player targetted by this action, or -1 for the handmaid, countess and princess
+   * @param guess the card guessed in a guard action, and null otherwise
+   * @return the action, or null if the arguments do not describe a valid action
+   * **/
+  public static Action of(Card card, int player, int target, Card guess){
+    if(check(card, player, target, guess)!=Legality.LEGAL) return null;
+    return TABLE[index(card.ordinal(), player, target, guess==null?0:guess.ordinal())];
+  }
+
+  /**
+   * Looks up an action by its index.
+   * @param index the index of the action, as given by index()
+   * @return the action, or null if the index does not correspond to a valid action
+   * @throws ArrayIndexOutOfBoundsException if the index is not between 0 and COUNT
+   * **/
+  public static Action of(int index){
+    return TABLE[index];
   }
 
   /**the card of the action
@@ -54,6 +149,12 @@ public class Action{
    * **/
   public Card guess(){return guess;}
 
+  /**the index of the action in the table of all actions, 
+   * so that actions may be stored as small integers
+   * @return an integer between 0 and COUNT that uniquely identifies the action
+   * **/
+  public int index(){return index;}
+
   /**produces a string representation of the action
    * @return a string representation of the action
    * **/
@@ -77,6 +178,13 @@ public class Action{
   }
 
 
+  //finds the canonical action, throwing an exception if the arguments are not valid
+  private static Action lookup(Card card, int player, int target, Card guess) throws IllegalActionException{
+    Legality status = check(card, player, target, guess);
+    if(status!=Legality.LEGAL) throw new IllegalActionException(status);
+    return TABLE[index(card.ordinal(), player, target, guess==null?0:guess.ordinal())];
+  }
+
   /**
    * Constructs a GUARD action from the player guessing the targets card.
    * @param player the player performing the action
@@ -86,11 +194,7 @@ public class Action{
    * @throws IllegalActionException if an illegal action.
    * **/
   public static Action playGuard(int player, int target, Card guess) throws IllegalActionException{
-    if(target==-1) throw new IllegalActionException("Target must be specified");
-    if(player == target) throw new IllegalActionException("Player cannot target themself");
-    if(guess == null) throw new IllegalActionException("Player cannot guess a null card");
-    if(guess == Card.GUARD) throw new IllegalActionException("Player cannot guess a guard");
-    return new Action(Card.GUARD, player, target, guess);
+    return lookup(Card.GUARD, player, target, guess);
   }
 
   /**
@@ -101,9 +205,7 @@ public class Action{
    * @throws IllegalActionException if an illegal action.
    * **/
   public static Action playPriest(int player, int target) throws IllegalActionException{
-    if(target==-1) throw new IllegalActionException("Target must be specified");
-    if(player == target) throw new IllegalActionException("Player cannot target themself");
-    return new Action(Card.PRIEST, player, target, null);
+    return lookup(Card.PRIEST, player, target, null);
   }
 
   /**
@@ -114,9 +216,7 @@ public class Action{
    * @throws IllegalActionException if an illegal action.
    * **/
   public static Action playBaron(int player, int target) throws IllegalActionException{
-    if(target==-1) throw new IllegalActionException("Target must be specified");
-    if(player == target) throw new IllegalActionException("Player cannot target themself");
-    return new Action(Card.BARON, player, target, null);
+    return lookup(Card.BARON, player, target, null);
   }
   
   /**
@@ -125,7 +225,7 @@ public class Action{
    * @return the action object
    * **/
   public static Action playHandmaid(int player) throws IllegalActionException{
-    return new Action(Card.HANDMAID, player, -1,null);
+    return lookup(Card.HANDMAID, player, -1, null);
   }
 
   /**
@@ -136,8 +236,7 @@ public class Action{
    * @return the action object
    * **/
   public static Action playPrince(int player, int target) throws IllegalActionException{
-    if(target==-1) throw new IllegalActionException("Target must be specified");
-    return new Action(Card.PRINCE, player, target, null);
+    return lookup(Card.PRINCE, player, target, null);
   }
 
   /**
@@ -149,11 +248,7 @@ public class Action{
    * @throws IllegalActionException if an illegal action.
    * **/
   public static Action playKing(int player, int target) throws IllegalActionException{
-    if(target==-1) 
-      throw new IllegalActionException("Target must be specified");
-    if(player==target)
-      throw new IllegalActionException("A player cannot target themselves.");
-    return new Action(Card.KING, player, target, null);
+    return lookup(Card.KING, player, target, null);
   }
 
   /**
@@ -163,7 +258,7 @@ public class Action{
    * @throws IllegalActionException if the player is out of range
    * **/
   public static Action playCountess(int player) throws IllegalActionException{
-    return new Action(Card.COUNTESS, player, -1, null);
+    return lookup(Card.COUNTESS, player, -1, null);
   }
 
   /**
@@ -173,6 +268,6 @@ public class Action{
    * @throws IllegalActionException if the player is out of range
    * **/
   public static Action playPrincess(int player) throws IllegalActionException{
-    return new Action(Card.PRINCESS, player, -1, null);
+    return lookup(Card.PRINCESS, player, -1, null);
   }
 }
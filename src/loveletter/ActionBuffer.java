@@ -0,0 +1,77 @@
+package loveletter;
+
+/**
+ * A reusable list of actions, filled by State.legalActions.
+ * The actions are stored by their index, so filling the buffer allocates nothing.
+ * **/
+public final class ActionBuffer{
+
+  /**The most legal actions a player can ever have: a guard against three targets, and a prince**/
+  public static final int CAPACITY = 32;
+
+  private final int[] actions = new int[CAPACITY];
+  private int size;
+
+  /**
+   * Creates an empty buffer.
+   * **/
+  public ActionBuffer(){}
+
+  /**
+   * @return the number of actions in the buffer
+   * **/
+  public int size(){return size;}
+
+  /**
+   * Removes every action from the buffer.
+   * **/
+  public void clear(){size = 0;}
+
+  /**
+   * @param i the position of the action in the buffer
+   * @return the index of the action at position i, as given by Action.index()
+   * **/
+  public int index(int i){return actions[check(i)];}
+
+  /**
+   * @param i the position of the action in the buffer
+   * @return the card played by the action at position i
+   * **/
+  public Card card(int i){return get(i).card();}
+
+  /**
+   * @param i the position of the action in the buffer
+   * @return the player performing the action at position i
+   * **/
+  public int player(int i){return get(i).player();}
+
+  /**
+   * @param i the position of the action in the buffer
+   * @return the target of the action at position i, or -1 if it has no target
+   * **/
+  public int target(int i){return get(i).target();}
+
+  /**
+   * @param i the position of the action in the buffer
+   * @return the guess of the guard action at position i, or null for other actions
+   * **/
+  public Card guess(int i){return get(i).guess();}
+
+  /**
+   * Gets the canonical instance of the action at the given position.
+   * @param i the position of the action in the buffer
+   * @return the action object
+   * @throws IndexOutOfBoundsException if i is not less than size()
+   * **/
+  public Action get(int i){return Action.of(actions[check(i)]);}
+
+  //adds an action given the codes of its cards, as used by PackedState
+  void add(int card, int player, int target, int guess){
+    actions[size++] = Action.index(card-1, player, target, guess==PackedState.NONE?0:guess-1);
+  }
+
+  private int check(int i){
+    if(i<0 || i>=size) throw new IndexOutOfBoundsException("Action "+i+" of "+size);
+    return i;
+  }
+}
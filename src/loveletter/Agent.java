@@ -34,6 +34,13 @@ public interface Agent{
    * */
   public Action playCard(Card c);
 
+  /**
+   * Seeds any random number generator the agent uses, so that games can be reproduced.
+   * Called before each game by the BatchRunner. Agents that use no randomness need not implement this.
+   * @param seed the seed for the agent's random number generator
+   * */
+  public default void seed(long seed){}
+
 }
 
 
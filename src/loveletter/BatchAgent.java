@@ -0,0 +1,52 @@
+package loveletter;
+
+/**
+ * An interface for an agent that decides many moves at once, from many games, 
+ * such as an agent scoring positions with a model that evaluates a batch of positions per call.
+ * Unlike an Agent, a batch agent is not told of each round and action, 
+ * so it must decide from the deciding player's state alone, which includes every card the player knows.
+ * A batch agent is played by a BatchAgentRunner, or as an ordinary agent through asAgent.
+ * */
+public interface BatchAgent{
+
+  /**
+   * Reports the agent's name
+   * */
+  public String toString();
+
+  /**
+   * Chooses an action for each of a batch of decisions, in different games.
+   * @param states the state of each game as seen by the deciding player, whose turn it is
+   * @param drawn the card the deciding player drew in each game
+   * @param count the number of decisions, in the first count elements of the arrays
+   * @param actions the array the chosen action of each decision is written to
+   * */
+  public void playCards(State[] states, Card[] drawn, int count, Action[] actions);
+
+  /**
+   * Adapts a batch agent to the Agent interface, deciding a batch of one at every turn.
+   * @param batch the batch agent
+   * @return an agent making the same decisions
+   * */
+  public static Agent asAgent(BatchAgent batch){
+    return new Agent(){
+      private State current;
+      private State[] states = new State[1];
+      private Card[] drawn = new Card[1];
+      private Action[] actions = new Action[1];
+
+      public void newRound(State start){current = start;}
+
+      public void see(Action act, State results){current = results;}
+
+      public Action playCard(Card c){
+        states[0] = current;
+        drawn[0] = c;
+        batch.playCards(states, drawn, 1, actions);
+        return actions[0];
+      }
+
+      public String toString(){return batch.toString();}
+    };
+  }
+}
@@ -0,0 +1,206 @@
+package loveletter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+import agents.RandomAgent;
+
+/**
+ * A class for playing a batch of games in which some seats are played by batch agents.
+ * Many games are kept in progress at once on the calling thread. Each game is played until
+ * a batch agent must move, then waits while the other games do the same, and once no game
+ * can proceed each batch agent decides all of its waiting moves in a single call.
+ * Games are seeded as by BatchRunner.playGame, so the results are those BatchRunner gives
+ * with each batch agent adapted by BatchAgent.asAgent, provided the agents keep no state between games.
+ */
+public class BatchAgentRunner {
+
+	private List<Supplier<? extends Agent>> seats;
+	private BatchAgent[] batchAgents;
+	private int tables;
+
+	/**
+	 * Constructs a runner for games between the given seats.
+	 * 
+	 * @param seats  a factory for the agent in each seat (2, 3 or 4 seats), which
+	 *               may be null for seats given a batch agent
+	 * @param tables the number of games in progress at once, and so the largest
+	 *               batch
+	 * @throws IllegalArgumentException if the number of seats or tables is
+	 *                                  invalid
+	 **/
+	public BatchAgentRunner(List<Supplier<? extends Agent>> seats, int tables) {
+		if (seats.size() < 2 || seats.size() > 4)
+			throw new IllegalArgumentException("incorrect number of agents");
+		if (tables < 1)
+			throw new IllegalArgumentException("at least one table is required");
+		this.seats = new ArrayList<>(seats);
+		this.tables = tables;
+		batchAgents = new BatchAgent[seats.size()];
+	}
+
+	/**
+	 * Seats a batch agent, in place of the seat's factory. The same batch agent
+	 * may take several seats, and decides the moves of all of them together.
+	 * 
+	 * @param seat  the index of the seat
+	 * @param agent the batch agent, or null to use the seat's factory
+	 **/
+	public void setBatchAgent(int seat, BatchAgent agent) {
+		batchAgents[seat] = agent;
+	}
+
+	/**
+	 * Plays a batch of games.
+	 * 
+	 * @param masterSeed the seed from which every game's seed is derived
+	 * @param games      the number of games to play
+	 * @return the aggregate results of the games
+	 * @throws IllegalStateException if a seat has neither a factory nor a batch
+	 *                               agent
+	 **/
+	public BatchResult run(long masterSeed, long games) {
+		for (int p = 0; p < seats.size(); p++)
+			if (batchAgents[p] == null && seats.get(p) == null)
+				throw new IllegalStateException("seat " + p + " has no agent");
+		List<BatchAgent> distinct = new ArrayList<>();
+		for (BatchAgent agent : batchAgents)
+			if (agent != null && !distinct.contains(agent))
+				distinct.add(agent);
+		BatchResult result = new BatchResult(seats.size());
+		Table[] active = new Table[(int) Math.min(tables, Math.max(games, 1))];
+		State[] states = new State[active.length];
+		Card[] drawn = new Card[active.length];
+		Action[] actions = new Action[active.length];
+		Table[] waiting = new Table[active.length];
+		long started = 0;
+		for (int i = 0; i < active.length; i++)
+			active[i] = new Table();
+		try {
+			for (Table table : active)
+				if (started < games)
+					table.start(masterSeed, started++);
+			boolean playing = games > 0;
+			while (playing) {
+				// play each game until a batch agent must move, starting new games as others
+				// finish
+				for (Table table : active)
+					while (table.game != null && table.waiting == -1 && !table.advance()) {
+						result.record(table.scoreboard());
+						table.game = null;
+						if (started < games)
+							table.start(masterSeed, started++);
+					}
+				playing = false;
+				for (BatchAgent agent : distinct) {
+					int count = 0;
+					for (Table table : active)
+						if (table.game != null && table.waiting != -1 && batchAgents[table.waiting] == agent) {
+							waiting[count] = table;
+							states[count] = table.views[table.waiting];
+							drawn[count] = table.drawn;
+							count++;
+						}
+					if (count == 0)
+						continue;
+					agent.playCards(states, drawn, count, actions);
+					for (int i = 0; i < count; i++)
+						waiting[i].play(actions[i]);
+					playing = true;
+				}
+			}
+		} catch (IllegalActionException e) {
+			throw new IllegalStateException("The engine rejected a replacement action", e);
+		}
+		return result;
+	}
+
+	// a game in progress, paused whenever a batch agent must move
+	private class Table {
+		private Agent[] agents = new Agent[seats.size()]; // the ordinary agents, null for batch seats
+		private Agent rando = new RandomAgent(); // replaces illegal actions
+		private State game;
+		private State[] views = new State[seats.size()];
+		private Outcome outcome = new Outcome();
+		private Card drawn;
+		private int waiting = -1; // the batch seat that must move, or -1
+		private boolean roundStart;
+
+		private Table() {
+			for (int p = 0; p < agents.length; p++)
+				if (batchAgents[p] == null)
+					agents[p] = seats.get(p).get();
+		}
+
+		// deals a game, seeded as BatchRunner.playGame seeds it
+		private void start(long masterSeed, long index) {
+			SplittableRandom random = new SplittableRandom(BatchRunner.gameSeed(masterSeed, index));
+			Rng deal = Rng.of(random.split());
+			rando.seed(random.nextLong());
+			for (Agent agent : agents) {
+				long seed = random.nextLong(); // drawn for batch seats too, so that every seat has its usual seed
+				if (agent != null)
+					agent.seed(seed);
+			}
+			Agent[] named = new Agent[agents.length];
+			for (int p = 0; p < agents.length; p++)
+				named[p] = agents[p] != null ? agents[p] : BatchAgent.asAgent(batchAgents[p]);
+			game = new State(deal, named);
+			roundStart = true;
+			waiting = -1;
+		}
+
+		// plays the game until a batch agent must move, returning false if the game is
+		// over instead
+		private boolean advance() throws IllegalActionException {
+			while (true) {
+				if (roundStart) {
+					if (game.gameOver())
+						return false;
+					for (int p = 0; p < agents.length; p++) {
+						views[p] = game.playerState(p);
+						if (agents[p] != null)
+							agents[p].newRound(views[p]);
+					}
+					roundStart = false;
+				}
+				if (game.roundOver()) {
+					game.newRound();
+					roundStart = true;
+					continue;
+				}
+				drawn = game.drawCard();
+				int actor = game.nextPlayer();
+				if (agents[actor] == null) {
+					waiting = actor;
+					return true;
+				}
+				play(agents[actor].playCard(drawn));
+			}
+		}
+
+		// executes the action of the player who drew, replacing it if it is illegal
+		private void play(Action act) throws IllegalActionException {
+			waiting = -1;
+			try {
+				game.play(act, drawn, outcome);
+			} catch (IllegalActionException e) {
+				rando.newRound(game.playerState(game.nextPlayer()));
+				act = rando.playCard(drawn);
+				game.play(act, drawn, outcome);
+			}
+			for (int p = 0; p < agents.length; p++)
+				if (agents[p] != null)
+					agents[p].see(act, views[p]);
+		}
+
+		private int[] scoreboard() {
+			int[] scores = new int[agents.length];
+			for (int p = 0; p < scores.length; p++)
+				scores[p] = game.score(p);
+			return scores;
+		}
+	}
+}
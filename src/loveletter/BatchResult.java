@@ -0,0 +1,141 @@
+package loveletter;
+
+/**
+ * The aggregate results of a batch of games between the same seats.
+ * Results are accumulated separately on each thread and merged at the end,
+ * and every field is an integer count, so the totals do not depend on the order of merging.
+ * **/
+public class BatchResult{
+
+  private int num; //the number of seats
+  private long games; //the number of games completed
+  private long errors; //the number of games abandoned because of an error
+  private long[] wins; //the number of games won by each seat
+  private long[] scores; //the total score of each seat
+  private long[] timeouts; //the number of games in which each seat overran a deadline
+  private GameStats stats; //the detailed statistics of the games, or null if not collected
+  private LatencyProfile latency; //the latencies of the agents, or null if not profiled
+
+  /**
+   * Creates an empty result
+   * @param num the number of seats in each game
+   * **/
+  public BatchResult(int num){
+    this.num = num;
+    wins = new long[num];
+    scores = new long[num];
+    timeouts = new long[num];
+  }
+
+  /**
+   * Creates an empty result, which may also collect detailed statistics of the games and the latencies of the agents
+   * @param num the number of seats in each game
+   * @param stats true if the detailed statistics should be collected
+   * @param latency true if the latencies of the agents should be profiled
+   * **/
+  public BatchResult(int num, boolean stats, boolean latency){
+    this(num);
+    if(stats) this.stats = new GameStats();
+    if(latency) this.latency = new LatencyProfile();
+  }
+
+  /**
+   * Records the scores of a completed game.
+   * The winner is the first seat with the highest score.
+   * @param scoreboard the scores of each seat, or null if the game was abandoned
+   * **/
+  public void record(int[] scoreboard){
+    if(scoreboard==null){
+      errors++;
+      return;
+    }
+    games++;
+    int winner = 0;
+    for(int p = 0; p<num; p++){
+      scores[p] += scoreboard[p];
+      if(scoreboard[p]>scoreboard[winner]) winner = p;
+    }
+    wins[winner]++;
+  }
+
+  /**
+   * Records that a seat overran a deadline in a game, and made random moves for the rest of it.
+   * @param seat the index of the seat
+   * **/
+  public void timeout(int seat){
+    timeouts[seat]++;
+  }
+
+  /**
+   * Adds the results of another batch to these results.
+   * @param other the results of a batch with the same number of seats
+   * **/
+  public void merge(BatchResult other){
+    games += other.games;
+    errors += other.errors;
+    for(int p = 0; p<num; p++){
+      wins[p] += other.wins[p];
+      scores[p] += other.scores[p];
+      timeouts[p] += other.timeouts[p];
+    }
+    if(stats!=null && other.stats!=null) stats.merge(other.stats);
+    if(latency!=null && other.latency!=null) latency.merge(other.latency);
+  }
+
+  /**
+   * @return the number of seats in each game
+   * **/
+  public int numPlayers(){return num;}
+
+  /**
+   * @return the number of games completed
+   * **/
+  public long games(){return games;}
+
+  /**
+   * @return the number of games abandoned because of an error
+   * **/
+  public long errors(){return errors;}
+
+  /**
+   * @param seat the index of the seat
+   * @return the number of games won by the seat
+   * **/
+  public long wins(int seat){return wins[seat];}
+
+  /**
+   * @param seat the index of the seat
+   * @return the fraction of completed games won by the seat
+   * **/
+  public double winRate(int seat){return games==0?0:(double)wins[seat]/games;}
+
+  /**
+   * @param seat the index of the seat
+   * @return the total score of the seat over every completed game
+   * **/
+  public long totalScore(int seat){return scores[seat];}
+
+  /**
+   * @param seat the index of the seat
+   * @return the number of games in which the seat overran a deadline
+   * **/
+  public long timeouts(int seat){return timeouts[seat];}
+
+  /**
+   * @return the detailed statistics of the games, or null if they were not collected.
+   * Games are only added to the statistics by observing them, for which the statistics are a narrator.
+   * **/
+  public GameStats stats(){return stats;}
+
+  /**
+   * @return the latencies of the agents' callbacks, or null if they were not profiled.
+   * **/
+  public LatencyProfile latency(){return latency;}
+
+  public String toString(){
+    String str = games+" games, "+errors+" errors";
+    for(int p = 0; p<num; p++)
+      str += "\n\t Seat "+p+": "+wins[p]+" wins ("+String.format("%.2f", 100*winRate(p))+"%)"+(timeouts[p]>0?", "+timeouts[p]+" timeouts":"");
+    return str;
+  }
+}
@@ -0,0 +1,385 @@
+package loveletter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * A class for playing a large batch of games of LoveLetter across many threads.
+ * Each worker thread creates its own agents from the factories provided. Each
+ * game derives its seed from the master seed and its index alone, reseeding
+ * the deal and every agent, so the results are identical whatever the number
+ * of threads, provided the agents keep no state between games.
+ */
+public class BatchRunner {
+
+	// the number of games a worker claims at a time
+	private static final int CHUNK = 256;
+	// the increment of the SplittableRandom sequence
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private List<Supplier<? extends Agent>> seats;
+	private int threads;
+	private boolean stats;
+	private boolean latency;
+	private long deadline; // the time allowed for each agent callback in nanoseconds, or 0 for no limit
+
+	/**
+	 * Constructs a runner for games between the given seats.
+	 * 
+	 * @param seats   a factory for the agent in each seat (2, 3 or 4 seats)
+	 * @param threads the number of worker threads
+	 * @throws IllegalArgumentException if the number of seats or threads is
+	 *                                  invalid
+	 **/
+	public BatchRunner(List<Supplier<? extends Agent>> seats, int threads) {
+		if (seats.size() < 2 || seats.size() > 4)
+			throw new IllegalArgumentException("incorrect number of agents");
+		if (threads < 1)
+			throw new IllegalArgumentException("at least one thread is required");
+		this.seats = new ArrayList<>(seats);
+		this.threads = threads;
+	}
+
+	/**
+	 * Constructs a runner for games between the given seats, using every
+	 * available processor.
+	 * 
+	 * @param seats a factory for the agent in each seat (2, 3 or 4 seats)
+	 **/
+	public BatchRunner(List<Supplier<? extends Agent>> seats) {
+		this(seats, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Sets whether the results of each batch include detailed statistics of the
+	 * games, which every worker collects separately and merges at the end.
+	 * 
+	 * @param stats true if the statistics should be collected
+	 **/
+	public void setStats(boolean stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * Sets whether the results of each batch include the latencies of every agent
+	 * callback, which every worker records separately and merges at the end.
+	 * 
+	 * @param latency true if the latencies should be recorded
+	 **/
+	public void setLatency(boolean latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Sets a deadline for every agent callback. Each worker calls its agents on a
+	 * supervised thread, and an agent that overruns the deadline is counted as a
+	 * timeout, makes random moves for the rest of the game, and is replaced by a
+	 * fresh agent for the next game.
+	 * 
+	 * @param deadline the time allowed for each callback, or 0 for no limit
+	 * @param unit     the unit of the deadline
+	 **/
+	public void setMoveDeadline(long deadline, TimeUnit unit) {
+		this.deadline = unit.toNanos(deadline);
+	}
+
+	/**
+	 * The seed of a game, which is the value a SplittableRandom seeded with the
+	 * master seed would produce for that game, computed directly from the index.
+	 * 
+	 * @param masterSeed the seed of the batch
+	 * @param game       the index of the game in the batch
+	 * @return the seed of the game
+	 **/
+	public static long gameSeed(long masterSeed, long game) {
+		long z = masterSeed + (game + 1) * GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Creates a fresh set of agents from the factories.
+	 * 
+	 * @return an agent for each seat
+	 **/
+	public Agent[] createAgents() {
+		Agent[] agents = new Agent[seats.size()];
+		for (int p = 0; p < agents.length; p++)
+			agents[p] = seats.get(p).get();
+		return agents;
+	}
+
+	/**
+	 * Plays a single game of the batch.
+	 * 
+	 * @param masterSeed the seed of the batch
+	 * @param game       the index of the game in the batch
+	 * @param agents     the agents to play the game, which are reseeded
+	 * @return the scores of each agent, or null if the game was abandoned
+	 **/
+	public static int[] playGame(long masterSeed, long game, Agent[] agents) {
+		return playGame(masterSeed, game, agents, (Narrator) null);
+	}
+
+	/**
+	 * Plays a single game of the batch, narrating its events.
+	 * 
+	 * @param masterSeed the seed of the batch
+	 * @param game       the index of the game in the batch
+	 * @param agents     the agents to play the game, which are reseeded
+	 * @param narrator   the narrator of the game, or null
+	 * @return the scores of each agent, or null if the game was abandoned
+	 **/
+	public static int[] playGame(long masterSeed, long game, Agent[] agents, Narrator narrator) {
+		return playGame(masterSeed, game, agents, narrator, null);
+	}
+
+	/**
+	 * Plays a single game of the batch, narrating its events and timing the
+	 * agents.
+	 * 
+	 * @param masterSeed the seed of the batch
+	 * @param game       the index of the game in the batch
+	 * @param agents     the agents to play the game, which are reseeded
+	 * @param narrator   the narrator of the game, or null
+	 * @param latency    the profile of the agents' latencies, or null
+	 * @return the scores of each agent, or null if the game was abandoned
+	 **/
+	public static int[] playGame(long masterSeed, long game, Agent[] agents, Narrator narrator,
+			LatencyProfile latency) {
+		LoveLetter env = new LoveLetter((Rng) null, null);
+		env.setNarrator(narrator);
+		env.setLatency(latency);
+		return playGame(masterSeed, game, agents, env);
+	}
+
+	/**
+	 * Plays a single game of the batch in an existing environment, which keeps
+	 * its narrator, latency profile and supervisor.
+	 * 
+	 * @param masterSeed the seed of the batch
+	 * @param game       the index of the game in the batch
+	 * @param agents     the agents to play the game, which are reseeded
+	 * @param env        the environment to play the game, which is reseeded
+	 * @return the scores of each agent, or null if the game was abandoned
+	 **/
+	public static int[] playGame(long masterSeed, long game, Agent[] agents, LoveLetter env) {
+		SplittableRandom random = new SplittableRandom(gameSeed(masterSeed, game));
+		env.setRng(Rng.of(random.split()));
+		env.seed(random.nextLong());
+		for (Agent agent : agents)
+			agent.seed(random.nextLong());
+		return env.playGame(agents);
+	}
+
+	/**
+	 * Plays a batch of games across the worker threads.
+	 * 
+	 * @param masterSeed the seed from which every game's seed is derived
+	 * @param games      the number of games to play
+	 * @return the aggregate results of the games
+	 * @throws IllegalStateException if a worker fails
+	 **/
+	public BatchResult run(long masterSeed, long games) {
+		return run(masterSeed, games, null);
+	}
+
+	/**
+	 * Plays a batch of games across the worker threads, recording every game.
+	 * 
+	 * @param masterSeed the seed from which every game's seed is derived
+	 * @param games      the number of games to play
+	 * @param records    the writer the games are recorded to, or null
+	 * @return the aggregate results of the games
+	 * @throws IllegalStateException if a worker fails
+	 **/
+	public BatchResult run(long masterSeed, long games, RecordWriter records) {
+		List<Worker> workers = runWorkers(threads, games, () -> new Worker(records), (w, g) -> w.play(masterSeed, g));
+		BatchResult total = new BatchResult(seats.size(), stats, latency);
+		for (Worker w : workers) {
+			total.merge(w.result);
+			if (w.supervisor != null)
+				w.supervisor.close();
+		}
+		return total;
+	}
+
+	/**
+	 * Plays a batch of games with each game on its own thread, for agents that
+	 * spend their time blocked rather than computing, such as remote or
+	 * external agents. Where the JVM provides virtual threads each game has a
+	 * virtual thread, and otherwise a platform thread. At most the given number
+	 * of games are in progress or awaiting collection at once, so a new game
+	 * only starts as the result of an earlier one is collected. Each game has
+	 * fresh agents, so the results are identical to those of run, provided the
+	 * agents keep no state between games.
+	 * 
+	 * @param masterSeed  the seed from which every game's seed is derived
+	 * @param games       the number of games to play
+	 * @param concurrency the most games in progress at once
+	 * @param records     the writer the games are recorded to, or null
+	 * @return the aggregate results of the games
+	 * @throws IllegalArgumentException if the concurrency is not positive
+	 * @throws IllegalStateException    if a game fails
+	 **/
+	public BatchResult runConcurrent(long masterSeed, long games, int concurrency, RecordWriter records) {
+		if (concurrency < 1)
+			throw new IllegalArgumentException("at least one game must run at a time");
+		ExecutorService executor = gameExecutor();
+		CompletionService<Worker> done = new ExecutorCompletionService<>(executor,
+				new ArrayBlockingQueue<>(concurrency));
+		BatchResult total = new BatchResult(seats.size(), stats, latency);
+		long started = 0;
+		try {
+			for (long collected = 0; collected < games;) {
+				if (started < games && started - collected < concurrency) {
+					long game = started++;
+					done.submit(() -> {
+						Worker w = new Worker(records);
+						try {
+							w.play(masterSeed, game);
+						} finally {
+							if (w.supervisor != null)
+								w.supervisor.close();
+						}
+						return w;
+					});
+				} else {
+					total.merge(done.take().get().result);
+					collected++;
+				}
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for games", e);
+		} catch (ExecutionException e) {
+			executor.shutdownNow();
+			throw new IllegalStateException("A game failed", e.getCause());
+		}
+		executor.shutdown();
+		return total;
+	}
+
+	/**
+	 * Plays a batch of games with each game on its own thread, as for
+	 * runConcurrent with a writer, without recording the games.
+	 * 
+	 * @param masterSeed  the seed from which every game's seed is derived
+	 * @param games       the number of games to play
+	 * @param concurrency the most games in progress at once
+	 * @return the aggregate results of the games
+	 * @throws IllegalArgumentException if the concurrency is not positive
+	 * @throws IllegalStateException    if a game fails
+	 **/
+	public BatchResult runConcurrent(long masterSeed, long games, int concurrency) {
+		return runConcurrent(masterSeed, games, concurrency, null);
+	}
+
+	/**
+	 * Creates an executor that runs each task on a new thread: a virtual thread
+	 * where the JVM provides them (from Java 21), and a daemon platform thread
+	 * otherwise.
+	 * 
+	 * @return the executor
+	 **/
+	static ExecutorService gameExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r, "game");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	// the agents, results and environment of a worker thread
+	private class Worker {
+		private Agent[] agents = createAgents();
+		private BatchResult result = new BatchResult(agents.length, stats, latency);
+		private LoveLetter env = new LoveLetter((Rng) null, null);
+		private Supervisor supervisor;
+
+		private Worker(RecordWriter records) {
+			Narrator narrator = result.stats();
+			if (records != null) {
+				GameRecorder recorder = new GameRecorder(records);
+				narrator = narrator == null ? recorder : narrator.andThen(recorder);
+			}
+			env.setNarrator(narrator);
+			env.setLatency(result.latency());
+			if (deadline > 0) {
+				supervisor = new Supervisor(deadline, TimeUnit.NANOSECONDS);
+				env.setSupervisor(supervisor);
+			}
+		}
+
+		private void play(long masterSeed, long game) {
+			result.record(playGame(masterSeed, game, agents, env));
+			for (int p = 0; p < agents.length; p++)
+				if (env.timedOut(p)) {
+					result.timeout(p);
+					agents[p] = seats.get(p).get();
+				}
+		}
+	}
+
+	/**
+	 * Runs indexed games across worker threads. Each thread creates its own worker
+	 * state and claims the indices of games in chunks, so the work is balanced
+	 * even when games take different times.
+	 * 
+	 * @param threads the number of worker threads
+	 * @param games   the number of games to play
+	 * @param worker  a factory for the state of each worker thread
+	 * @param play    plays the game with the given index using a worker's state
+	 * @return the state of each worker, once every game is played
+	 * @throws IllegalStateException if a worker fails
+	 **/
+	static <W> List<W> runWorkers(int threads, long games, Supplier<W> worker, ObjLongConsumer<W> play) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		AtomicLong next = new AtomicLong();
+		List<Future<W>> futures = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			futures.add(pool.submit(() -> {
+				W w = worker.get();
+				long start;
+				while ((start = next.getAndAdd(CHUNK)) < games) {
+					long end = Math.min(start + CHUNK, games);
+					for (long g = start; g < end; g++)
+						play.accept(w, g);
+				}
+				return w;
+			}));
+		}
+		pool.shutdown();
+		List<W> workers = new ArrayList<>();
+		try {
+			for (Future<W> future : futures)
+				workers.add(future.get());
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for games", e);
+		} catch (ExecutionException e) {
+			pool.shutdownNow();
+			throw new IllegalStateException("A worker failed", e.getCause());
+		}
+		return workers;
+	}
+}
@@ -0,0 +1,359 @@
+package loveletter;
+
+/**
+ * Tracks the exact probability of every combination of the opponents' hands, from one player's point of view.
+ * The tracker holds the joint distribution of the other players' cards in a fixed table of 9^3 cells
+ * (a card code, or none once eliminated, for each of up to three opponents), together with the number of each card
+ * the player has not seen, and updates both as it is told of each action through see, as an agent is.
+ * <p>
+ * Each update is Bayes' rule over the table. When an opponent plays, the card drawn is weighed by the cards left in the deck
+ * for each combination, and the card played by how likely the opponent was to play it,
+ * under the model that a player never discards the Princess by choice, obeys the Countess,
+ * and otherwise picks either card with equal chance. The player's own draws weigh each combination by the cards it leaves in the deck.
+ * Failed guards, baron results and ties, cards revealed by the priest, the baron or elimination,
+ * prince discards and redraws, and king swaps each condition or permute the table.
+ * The table never grows, so every update takes the same bounded time, a few thousand multiplications at most.
+ * If the opponents play in a way the model gives no chance, the tracker starts again from what the player can see.
+ * **/
+public final class BeliefTracker{
+
+  private static final int CELLS = 9*9*9;
+  private static final int[] STRIDE = {1, 9, 81};
+  private static final byte[][] DIGIT = new byte[3][CELLS]; //the card code of each slot in each cell
+  private static final double[][][] CHANCE = new double[9][9][9]; //the chance of holding two cards and playing the third
+  static{
+    for(int cell = 0; cell<CELLS; cell++)
+      for(int s = 0; s<3; s++) DIGIT[s][cell] = (byte)(cell/STRIDE[s]%9);
+    for(int o = 1; o<9; o++)
+      for(int d = 1; d<9; d++)
+        for(int c = 1; c<9; c++) CHANCE[o][d][c] = chance(o, d, c);
+  }
+
+  private State view;
+  private int me;
+  private int num;
+  private int cells; //9^(num-1), the cells in use
+  private final int[] slot = new int[4]; //the slot of each opponent's card in a cell, or -1 for the player
+  private final int[] unseen = new int[9]; //the cards in the opponents' hands and the deck, by code
+  private int hand; //the code of the player's card
+  private final boolean[] gone = new boolean[3]; //whether each slot's player has been eliminated
+  private double[] joint = new double[CELLS];
+  private double[] next = new double[CELLS];
+
+  /**
+   * Creates a tracker, which must be given a view by newRound before use.
+   * **/
+  public BeliefTracker(){}
+
+  /**
+   * Starts a new round, in which the opponents' cards are dealt at random from the cards the player has not seen.
+   * @param start the player's view of the new round
+   * @throws IllegalArgumentException if the state is not a player's view
+   * **/
+  public void newRound(State start){
+    if(start.getPlayerIndex()==-1) throw new IllegalArgumentException("The tracker needs a player's view");
+    view = start;
+    me = start.getPlayerIndex();
+    num = start.numPlayers();
+    cells = 1;
+    for(int p = 0, s = 0; p<num; p++){
+      slot[p] = p==me?-1:s++;
+      if(p!=me) cells *= 9;
+    }
+    restart();
+  }
+
+  /**
+   * Updates the distribution with an action.
+   * @param act the action performed
+   * @param results the player's view after the action
+   * **/
+  public void see(Action act, State results){
+    view = results;
+    PackedState s = results.packed();
+    int a = act.player(), t = act.target();
+    int c = PackedState.code(act.card());
+    if(a==me){
+      int kept;//the card the player kept, found from where it went
+      if(s.eliminated(me) || (c==PackedState.PRINCE && t==me)) kept = lastDiscard(s, me);
+      else if(c==PackedState.KING && !protectedTarget(s, a, t)) kept = s.hand(t);
+      else kept = s.hand(me);
+      draw(hand==c?kept:c);//the player held hand and drew a card, of which c was played
+      hand = kept;
+    }
+    else play(slot[a], c);
+    if(c==PackedState.PRINCE) prince(s, t);//the target may be protected by the handmaid it discarded
+    else if(!protectedTarget(s, a, t)){
+      switch(c){
+        case PackedState.GUARD:
+          if(!s.eliminated(t) && t!=me) exclude(slot[t], PackedState.code(act.guess()));
+          break;
+        case PackedState.BARON:
+          if(s.eliminated(a) || s.eliminated(t)){
+            int loser = s.eliminated(a)?a:t, winner = loser==a?t:a;
+            if(winner!=me) above(slot[winner], lastDiscard(s, loser));
+          }
+          else if(a!=me && t!=me) tie(slot[a], slot[t]);
+          break;
+        case PackedState.KING:
+          king(s, a, t);
+          break;
+        default:
+      }
+    }
+    //cards revealed by elimination, the priest, the baron or the king
+    for(int p = 0; p<num; p++){
+      if(p==me) continue;
+      if(s.eliminated(p)) eliminate(slot[p], lastDiscard(s, p));
+      else if(s.knows(me, p)) condition(slot[p], s.hand(p));
+    }
+    if(s.eliminated(me)) hand = PackedState.NONE;
+    if(normalise()==0) restart();
+  }
+
+  /**
+   * The probability that a player holds a card.
+   * @param player the player
+   * @param card the card
+   * @return the probability, which is 0 or 1 for the player's own card and for eliminated players
+   * **/
+  public double probability(int player, Card card){
+    int code = PackedState.code(card);
+    if(player==me) return hand==code?1:0;
+    int s = slot[player];
+    double p = 0;
+    for(int cell = 0; cell<cells; cell++)
+      if(DIGIT[s][cell]==code) p += joint[cell];
+    return p;
+  }
+
+  /**
+   * The probability of every card a player may hold.
+   * @param player the player
+   * @param out the array to be filled with the probability of each card, indexed by ordinal
+   * **/
+  public void marginal(int player, double[] out){
+    for(int i = 0; i<8; i++) out[i] = 0;
+    if(player==me){
+      if(hand!=PackedState.NONE) out[hand-1] = 1;
+      return;
+    }
+    int s = slot[player];
+    for(int cell = 0; cell<cells; cell++){
+      int code = DIGIT[s][cell];
+      if(code!=PackedState.NONE) out[code-1] += joint[cell];
+    }
+  }
+
+  /**
+   * The card a player most likely holds, preferring the higher card when two are equally likely.
+   * @param player the player
+   * @return the card, or null if the player is eliminated
+   * **/
+  public Card mostLikely(int player){
+    Card best = null;
+    double most = 0;
+    for(Card card: PackedState.CARDS){
+      double p = probability(player, card);
+      if(p>0 && p>=most){
+        most = p;
+        best = card;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * The probability of a combination of the opponents' hands.
+   * @param hands the card of each player, indexed by player, where the player's own card and the cards of eliminated players are ignored
+   * @return the probability that every opponent still in the round holds the given card
+   * **/
+  public double joint(Card[] hands){
+    int cell = 0;
+    for(int p = 0; p<num; p++)
+      if(p!=me && !view.eliminated(p)) cell += PackedState.code(hands[p])*STRIDE[slot[p]];
+    return joint[cell];
+  }
+
+  //starts again from the cards the player can see, dealing the unknown opponents' cards from the unseen cards
+  private void restart(){
+    PackedState s = view.packed();
+    for(int c = 0; c<9; c++) unseen[c] = 0;
+    for(int i = s.top; i<16; i++) unseen[s.deckCard(i)]++;
+    for(int p = 0; p<num; p++)
+      if(p!=me) unseen[s.hand(p)]++;
+    unseen[PackedState.NONE] = 0;
+    hand = s.hand(me);
+    for(int p = 0; p<num; p++)
+      if(p!=me) gone[slot[p]] = s.eliminated(p);
+    java.util.Arrays.fill(joint, 0, cells, 0);
+    int known = 0;//the cell of the known opponents' cards
+    for(int p = 0; p<num; p++)
+      if(p!=me && s.knows(me, p)) known += s.hand(p)*STRIDE[slot[p]];
+    joint[known] = 1;
+    for(int p = 0; p<num; p++)
+      if(p!=me && !s.knows(me, p)) deal(slot[p]);
+    normalise();
+  }
+
+  //the number of card y left in the deck when the opponents hold the cards of a cell, where unused slots hold no card
+  private int left(int cell, int y){
+    return unseen[y]-(DIGIT[0][cell]==y?1:0)-(DIGIT[1][cell]==y?1:0)-(DIGIT[2][cell]==y?1:0);
+  }
+
+  //an opponent with no card draws one from the deck
+  private void deal(int s){
+    java.util.Arrays.fill(next, 0, cells, 0);
+    for(int cell = 0; cell<cells; cell++){
+      double w = joint[cell];
+      if(w==0 || DIGIT[s][cell]!=PackedState.NONE) continue;
+      for(int y = 1; y<9; y++){
+        int n = left(cell, y);
+        if(n>0) next[cell+y*STRIDE[s]] += w*n;
+      }
+    }
+    swap();
+  }
+
+  //the player draws a card from the deck
+  private void draw(int y){
+    for(int cell = 0; cell<cells; cell++)
+      if(joint[cell]!=0) joint[cell] *= Math.max(left(cell, y), 0);
+    unseen[y]--;
+  }
+
+  //an opponent draws a card and plays a card, keeping the other
+  private void play(int s, int c){
+    java.util.Arrays.fill(next, 0, cells, 0);
+    for(int cell = 0; cell<cells; cell++){
+      double w = joint[cell];
+      int o = DIGIT[s][cell];
+      if(w==0 || o==PackedState.NONE) continue;
+      if(o!=c){//the card played was the card drawn
+        int n = left(cell, c);
+        if(n>0) next[cell] += w*n*CHANCE[o][c][c];
+        continue;
+      }
+      for(int d = 1; d<9; d++){//the card played was the card held, so any card may have been drawn and kept
+        int n = left(cell, d);
+        if(n>0) next[cell+(d-o)*STRIDE[s]] += w*n*CHANCE[o][d][c];
+      }
+    }
+    swap();
+    unseen[c]--;
+  }
+
+  //the chance a player holding cards o and d plays card c
+  private static double chance(int o, int d, int c){
+    if(o!=c && d!=c) return 0;
+    int other = o==c?d:o;
+    if(other==c) return 1;
+    if(c==PackedState.COUNTESS && (other==PackedState.KING || other==PackedState.PRINCE)) return 1;
+    if(other==PackedState.COUNTESS && (c==PackedState.KING || c==PackedState.PRINCE)) return 0;
+    if(c==PackedState.PRINCESS) return 1;//only by mistake, so no chance of the mistake is modelled
+    if(other==PackedState.PRINCESS) return 1;
+    return 0.5;
+  }
+
+  //the target of a prince discards their card and draws another, unless the card was the princess
+  private void prince(PackedState s, int t){
+    if(s.eliminated(t)) return;//the princess was discarded, and elimination is handled with the others
+    int x = lastDiscard(s, t);
+    if(t==me){
+      hand = s.hand(me);
+      draw(hand);
+      return;
+    }
+    eliminate(slot[t], x);
+    gone[slot[t]] = false;
+    deal(slot[t]);
+  }
+
+  //the actor and the target swap cards
+  private void king(PackedState s, int a, int t){
+    if(a!=me && t!=me){
+      int sa = slot[a], st = slot[t];
+      java.util.Arrays.fill(next, 0, cells, 0);
+      for(int cell = 0; cell<cells; cell++){
+        double w = joint[cell];
+        if(w==0) continue;
+        int ca = DIGIT[sa][cell], ct = DIGIT[st][cell];
+        next[cell+(ct-ca)*STRIDE[sa]+(ca-ct)*STRIDE[st]] += w;
+      }
+      swap();
+      return;
+    }
+    int other = a==me?t:a;//the player gave their card to the other, and now holds the other's old card
+    int given = hand, received = s.hand(me);
+    condition(slot[other], received);
+    int so = slot[other];
+    java.util.Arrays.fill(next, 0, cells, 0);
+    for(int cell = 0; cell<cells; cell++)
+      if(joint[cell]!=0) next[cell+(given-received)*STRIDE[so]] += joint[cell];
+    swap();
+    unseen[received]--;
+    unseen[given]++;
+    hand = received;
+  }
+
+  //an opponent is known not to hold a card
+  private void exclude(int s, int code){
+    for(int cell = 0; cell<cells; cell++)
+      if(DIGIT[s][cell]==code) joint[cell] = 0;
+  }
+
+  //an opponent is known to hold a card higher than the given card
+  private void above(int s, int code){
+    for(int cell = 0; cell<cells; cell++)
+      if(DIGIT[s][cell]<=code) joint[cell] = 0;
+  }
+
+  //two opponents are known to hold the same card
+  private void tie(int s, int u){
+    for(int cell = 0; cell<cells; cell++)
+      if(DIGIT[s][cell]!=DIGIT[u][cell]) joint[cell] = 0;
+  }
+
+  //an opponent is known to hold a card
+  private void condition(int s, int code){
+    for(int cell = 0; cell<cells; cell++)
+      if(DIGIT[s][cell]!=code) joint[cell] = 0;
+  }
+
+  //an opponent's card is revealed and leaves their hand, unless this is already known
+  private void eliminate(int s, int code){
+    if(gone[s]) return;
+    gone[s] = true;
+    condition(s, code);
+    java.util.Arrays.fill(next, 0, cells, 0);
+    for(int cell = 0; cell<cells; cell++)
+      if(joint[cell]!=0) next[cell-code*STRIDE[s]] += joint[cell];
+    swap();
+    unseen[code]--;
+  }
+
+  private static int lastDiscard(PackedState s, int p){
+    return s.discard(p, s.discardCount(p)-1);
+  }
+
+  //the target was protected by the handmaid, so the action had no effect
+  private static boolean protectedTarget(PackedState s, int a, int t){
+    return t!=-1 && t!=a && s.handmaid(t);
+  }
+
+  private void swap(){
+    double[] t = joint;
+    joint = next;
+    next = t;
+  }
+
+  private double normalise(){
+    double total = 0;
+    for(int cell = 0; cell<cells; cell++) total += joint[cell];
+    if(total>0){
+      double scale = 1/total;
+      for(int cell = 0; cell<cells; cell++) joint[cell] *= scale;
+    }
+    return total;
+  }
+}
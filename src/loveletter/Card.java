@@ -48,12 +48,23 @@ public enum Card {
     public int count(){return count;}
 
     /**
-     * Creates a shuffled deck of cards
+     * Creates a shuffled deck of cards, using 200 random swaps.
+     * This shuffle is retained so that games with existing seeds can be reproduced,
+     * deal(Rng, Card[]) is faster and every order of the deck is equally likely.
      * @param rand a random number generator to shuffle the deck
      * @return an array of cards representing a standard deck of loveletter cards, in random order.
      * **/
     public static Card[] deal(java.util.Random rand){
-      Card[] deck = new Card[16];
+      return deal(rand, new Card[16]);
+    }
+
+    /**
+     * Shuffles a deck of cards into an existing array, using the same 200 random swaps as deal(Random).
+     * @param rand a random number generator to shuffle the deck
+     * @param deck an array of 16 cards to be overwritten with the deck
+     * @return the deck array, representing a standard deck of loveletter cards, in random order.
+     * **/
+    public static Card[] deal(java.util.Random rand, Card[] deck){
       int j = 0;
       for(Card c: Card.values())
         for(int i = 0; i<c.count(); i++)
@@ -69,6 +80,20 @@ public enum Card {
     }
 
 
+    /**
+     * Shuffles a deck of cards into an existing array with a Fisher-Yates shuffle, 
+     * so that every order of the deck is equally likely.
+     * @param rng a random number generator to shuffle the deck
+     * @param deck an array of 16 cards to be overwritten with the deck
+     * @return the deck array, representing a standard deck of loveletter cards, in random order.
+     * **/
+    public static Card[] deal(Rng rng, Card[] deck){
+      long packed = PackedState.shuffle(PackedState.DECK, rng);
+      for(int i = 0; i<16; i++)
+        deck[i] = PackedState.card((int)(packed>>>(i<<2))&0xF);
+      return deck;
+    }
+
     /**
      * Creates a shuffled deck of cards, using a default random number generator
      * @return an array of cards representing a standard deck of loveletter cards, in random order.
@@ -0,0 +1,205 @@
+package loveletter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A strategy for the two player game, trained by the CfrTrainer, that picks an action with a single table lookup.
+ * The strategy is defined over abstract information sets, which keep what matters most to the player about to act:
+ * the two cards in hand (in order only when the opponent knows which one was held), the opponent's card if the player knows it,
+ * whether the opponent is protected by the handmaid, and the histogram of every card discarded by both players.
+ * The legal actions of an information set are the same in every state it contains, and are listed in a fixed order:
+ * the guard by guess, then the priest, baron, handmaid, prince at the opponent, prince at the player, king, countess and princess.
+ * <p>
+ * A policy file starts with a 12 byte header: the magic bytes "LLCF", a version byte, 3 reserved bytes
+ * and the number of information sets as a little endian int.
+ * Each information set follows as its key (a little endian int), the number of its actions in a byte
+ * and the chance of each action in the fixed order, as a byte out of the total of the bytes.
+ * **/
+public final class CfrPolicy{
+
+  /**The magic bytes at the start of a policy file, "LLCF" read as a little endian int**/
+  public static final int MAGIC = 0x46434C4C;
+  /**The version of the format**/
+  public static final int VERSION = 1;
+  /**The size of the file header in bytes**/
+  public static final int HEADER = 12;
+  /**The most legal actions of an information set: the guard's seven guesses and the prince's two targets**/
+  public static final int MAX_ACTIONS = 9;
+
+  private final int[] keys; //the key of each information set
+  private final int[] offsets; //the first chance of each information set, and the number of chances at the end
+  private final byte[] chances; //the weight of each action, out of the total for its information set
+  private final int[] slots; //the index of each information set plus one by the hash of its key, or 0
+
+  /**
+   * Creates a policy from its tables.
+   * @param keys the key of each information set
+   * @param offsets the first chance of each information set, with the number of chances added at the end
+   * @param chances the weights of the actions
+   * **/
+  CfrPolicy(int[] keys, int[] offsets, byte[] chances){
+    this.keys = keys;
+    this.offsets = offsets;
+    this.chances = chances;
+    int size = Integer.highestOneBit(Math.max(keys.length, 1)*2-1)*2;//a load of at most a half
+    slots = new int[size];
+    for(int i = 0; i<keys.length; i++){
+      int s = slot(keys[i]);
+      while(slots[s]!=0) s = (s+1)&(size-1);
+      slots[s] = i+1;
+    }
+  }
+
+  /**
+   * Reads a policy file.
+   * @param file the path of the file
+   * @return the policy
+   * @throws IOException if the file cannot be read, or is not a policy file
+   * **/
+  public static CfrPolicy load(Path file) throws IOException{
+    ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+    if(in.remaining()<HEADER || in.getInt(0)!=MAGIC) throw new IOException("Not a policy file");
+    if(in.get(4)!=VERSION) throw new IOException("Unsupported policy version "+in.get(4));
+    int count = in.getInt(8);
+    in.position(HEADER);
+    int[] keys = new int[count];
+    int[] offsets = new int[count+1];
+    byte[] chances = new byte[in.remaining()];
+    int total = 0;
+    try{
+      for(int i = 0; i<count; i++){
+        keys[i] = in.getInt();
+        int n = in.get();
+        if(n<1 || n>MAX_ACTIONS) throw new IOException("Information set "+i+" has "+n+" actions");
+        offsets[i] = total;
+        in.get(chances, total, n);
+        total += n;
+      }
+    }catch(java.nio.BufferUnderflowException e){
+      throw new IOException("The policy file is truncated");
+    }
+    offsets[count] = total;
+    return new CfrPolicy(keys, offsets, java.util.Arrays.copyOf(chances, total));
+  }
+
+  /**
+   * Writes the policy to a file, replacing any existing file.
+   * @param file the path of the file
+   * @throws IOException if the file cannot be written
+   * **/
+  public void save(Path file) throws IOException{
+    ByteBuffer out = ByteBuffer.allocate(HEADER+5*keys.length+chances.length).order(ByteOrder.LITTLE_ENDIAN);
+    out.putInt(MAGIC).put((byte)VERSION).put(new byte[3]).putInt(keys.length);
+    for(int i = 0; i<keys.length; i++){
+      out.putInt(keys[i]).put((byte)(offsets[i+1]-offsets[i]));
+      out.put(chances, offsets[i], offsets[i+1]-offsets[i]);
+    }
+    Files.write(file, out.array());
+  }
+
+  /**
+   * @return the number of information sets in the policy
+   * **/
+  public int size(){return keys.length;}
+
+  /**
+   * Picks an action for the player whose view is given, which must be the player to act in a two player game.
+   * The policy is never changed once created, so any number of agents and threads may share it.
+   * @param view the player's view
+   * @param drawn the card the player drew
+   * @param rng the generator used to pick the action
+   * @param legal a buffer for the legal actions
+   * @return the action, or null if the game is not a two player game or the policy has no strategy for the information set
+   * **/
+  public Action choose(State view, Card drawn, Rng rng, ActionBuffer legal){
+    PackedState s = view.packed();
+    if(s.num!=2 || s.nextPlayer!=view.getPlayerIndex()) return null;
+    int code = PackedState.code(drawn);
+    int i = find(infoset(s, code));
+    if(i<0) return null;
+    s.legalActions(code, legal);
+    int n = legal.size();
+    int from = offsets[i];
+    if(offsets[i+1]-from!=n) return null;
+    int total = 0;
+    for(int k = 0; k<n; k++) total += chances[from+k]&0xFF;
+    int r = rng.nextInt(total);
+    for(int k = 0; k<n; k++){
+      int rank = rank(legal.get(k), s.nextPlayer);
+      int place = 0;//the place of the action in the fixed order
+      for(int j = 0; j<n; j++)
+        if(rank(legal.get(j), s.nextPlayer)<rank) place++;
+      int w = chances[from+place]&0xFF;
+      if(r<w) return legal.get(k);
+      r -= w;
+    }
+    return null;//unreachable, as r is less than the total
+  }
+
+  //the index of the information set with the given key, or -1
+  private int find(int key){
+    for(int s = slot(key); slots[s]!=0; s = (s+1)&(slots.length-1))
+      if(keys[slots[s]-1]==key) return slots[s]-1;
+    return -1;
+  }
+
+  private int slot(int key){
+    int h = key*0x9E3779B1;
+    return (h^h>>>15)&(slots.length-1);
+  }
+
+  /**
+   * The key of the information set of the next player, in a two player game, who has drawn a card.
+   * The key packs the two cards in bits 0-7, the opponent's card if known in bits 8-11,
+   * the opponent's protection in bit 12, whether the opponent knows the card held in bit 13,
+   * and the Matchups histogram of the discards from bit 14.
+   * @param s the state
+   * @param drawn the code of the card drawn
+   * @return the key, which is never 0
+   * **/
+  static int infoset(PackedState s, int drawn){
+    int discards = 0;
+    for(int p = 0; p<2; p++)
+      for(int j = 0, n = s.discardCount(p); j<n; j++) discards = Matchups.add(discards, PackedState.card(s.discard(p, j)));
+    return infoset(s, drawn, discards);
+  }
+
+  //the key of the information set, given the histogram of the discards
+  static int infoset(PackedState s, int drawn, int discards){
+    int a = s.nextPlayer, o = 1-a;
+    int held = s.hand(a);
+    boolean seen = s.knows(o, a);
+    int lo = seen?held:Math.min(held, drawn), hi = seen?drawn:Math.max(held, drawn);
+    return lo | hi<<4 | (s.knows(a, o)?s.hand(o):0)<<8 | (s.handmaid(o)?1<<12:0) | (seen?1<<13:0) | discards<<14;
+  }
+
+  /**
+   * Lists the legal actions in the fixed order of their information set.
+   * @param s the state, whose next player is to act
+   * @param legal the legal actions, as listed by PackedState.legalActions
+   * @param order overwritten with the index in legal of each action, in the fixed order
+   * @return the number of actions
+   * **/
+  static int order(PackedState s, ActionBuffer legal, int[] order){
+    int n = legal.size();
+    int a = s.nextPlayer;
+    for(int i = 0; i<n; i++){//insertion sort on the rank, held above the index
+      int entry = rank(legal.get(i), a)<<4 | i;
+      int k = i;
+      for(; k>0 && order[k-1]>entry; k--) order[k] = order[k-1];
+      order[k] = entry;
+    }
+    for(int i = 0; i<n; i++) order[i] &= 0xF;
+    return n;
+  }
+
+  //the rank of an action in the fixed order, from 0 to 14: the guesses of the guard, then the other cards, with the prince's two targets
+  private static int rank(Action act, int actor){
+    int c = act.card().ordinal();
+    return c==0?act.guess().ordinal()-1:c<4?c+6:c==4?(act.target()==actor?11:10):c+7;
+  }
+}
@@ -0,0 +1,240 @@
+package loveletter;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trains a CfrPolicy for the two player game by Monte Carlo counterfactual regret minimisation with external sampling:
+ * each iteration deals a round, and walks every action of one player (the traverser, alternating between iterations)
+ * against a single action of the other sampled from the current strategy, the deck being fixed by the deal.
+ * Regrets are updated by regret matching+, which keeps them at zero or above so the strategy reacts quickly to a change,
+ * and the opponent's strategy at each visit is added to the average strategy, which is what the policy plays.
+ * A round is worth 1 to its winner and -1 to the loser, so the policy plays each round to win it, regardless of the score.
+ * <p>
+ * The information sets are those of the CfrPolicy. Their regrets and strategy sums are held side by side in a flat table,
+ * MAX_ACTIONS floats of each, found by open addressing on the key, which every training thread shares without locks:
+ * a key is claimed by compare and set, and the floats are updated in place by whichever thread visits,
+ * so an update racing with another may be lost, which sampling makes no worse than noise.
+ * The table never grows; once it is full, unseen information sets are played uniformly and not learned.
+ * **/
+public final class CfrTrainer{
+
+  private static final int DEPTH = 16; //more than the turns of a round
+  private static final int PROBES = 64; //the longest run of the table searched for a key
+  private static final int STRIDE = 2*CfrPolicy.MAX_ACTIONS; //the floats of each entry
+  private static final int SUMS = CfrPolicy.MAX_ACTIONS; //the offset of the strategy sums in an entry
+
+  private final AtomicIntegerArray keys; //the key of each entry, or 0 if it is free
+  private final byte[] sizes; //the number of actions of each entry
+  private final float[] tables; //the regret of each action of each entry, then the sum of its strategies, so an entry shares its cache lines
+  private final int mask;
+  private long iterations;
+
+  /**
+   * Creates a trainer with an empty table.
+   * @param bits the base 2 logarithm of the number of information sets the table can hold, each taking 77 bytes
+   * @throws IllegalArgumentException if bits is not between 1 and 26
+   * **/
+  public CfrTrainer(int bits){
+    if(bits<1 || bits>26) throw new IllegalArgumentException("The table must have between 2^1 and 2^26 entries");
+    keys = new AtomicIntegerArray(1<<bits);
+    sizes = new byte[1<<bits];
+    tables = new float[STRIDE<<bits];
+    mask = (1<<bits)-1;
+  }
+
+  /**
+   * Runs iterations of training, adding to any already run.
+   * @param iterations the number of iterations, each dealing one round
+   * @param threads the number of threads to train on
+   * @param seed the seed of the deals and samples, from which each thread's generator is seeded
+   * @throws IllegalStateException if a thread fails
+   * **/
+  public void train(long iterations, int threads, long seed){
+    long first = this.iterations;
+    AtomicLong walkers = new AtomicLong(seed);
+    BatchRunner.runWorkers(threads, iterations, () -> new Walker(walkers.getAndAdd(0x9E3779B97F4A7C15L)), (w, i) -> w.iterate(first+i));
+    this.iterations += iterations;
+  }
+
+  /**
+   * @return the number of iterations run
+   * **/
+  public long iterations(){return iterations;}
+
+  /**
+   * @return the number of information sets visited
+   * **/
+  public int infosets(){
+    int count = 0;
+    for(int i = 0; i<=mask; i++)
+      if(keys.get(i)!=0) count++;
+    return count;
+  }
+
+  /**
+   * Creates a policy from the average strategy of every information set visited as the opponent of the traverser.
+   * Each chance is rounded to a byte out of 255, but an action is never rounded to a chance of 0 when it has been played.
+   * Not safe while training.
+   * @return the policy
+   * **/
+  public CfrPolicy policy(){
+    int count = 0, total = 0;
+    for(int i = 0; i<=mask; i++)
+      if(visited(i)){
+        count++;
+        total += sizes[i];
+      }
+    int[] policyKeys = new int[count];
+    int[] offsets = new int[count+1];
+    byte[] chances = new byte[total];
+    int e = 0, at = 0;
+    for(int i = 0; i<=mask; i++){
+      if(!visited(i)) continue;
+      int base = i*STRIDE+SUMS;
+      float sum = 0;
+      for(int k = 0; k<sizes[i]; k++) sum += tables[base+k];
+      policyKeys[e] = keys.get(i);
+      offsets[e++] = at;
+      for(int k = 0; k<sizes[i]; k++){
+        int c = Math.round(255*tables[base+k]/sum);
+        chances[at++] = (byte)(c==0 && tables[base+k]>0?1:c);
+      }
+    }
+    offsets[count] = at;
+    return new CfrPolicy(policyKeys, offsets, chances);
+  }
+
+  private boolean visited(int i){
+    if(keys.get(i)==0) return false;
+    int base = i*STRIDE+SUMS;
+    for(int k = 0; k<sizes[i]; k++)
+      if(tables[base+k]>0) return true;
+    return false;
+  }
+
+  //the entry of an information set, claimed if it is new, or -1 if the table is too full to hold it
+  private int entry(int key, int n){
+    int h = key*0x9E3779B1;
+    h ^= h>>>15;
+    for(int p = 0; p<PROBES; p++){
+      int i = (h+p)&mask;
+      int k = keys.get(i);
+      if(k==key) return i;
+      if(k==0){
+        if(keys.compareAndSet(i, 0, key)){
+          sizes[i] = (byte)n;
+          return i;
+        }
+        if(keys.get(i)==key) return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The state of a training thread, which walks the rounds of its iterations.
+   * **/
+  private final class Walker{
+    private final PackedState s = new PackedState(2);
+    private final Xoshiro256 rng;
+    private final ActionBuffer[] legal = new ActionBuffer[DEPTH];
+    private final int[][] order = new int[DEPTH][CfrPolicy.MAX_ACTIONS];
+    private final float[][] strategy = new float[DEPTH][CfrPolicy.MAX_ACTIONS];
+    private final double[][] values = new double[DEPTH][CfrPolicy.MAX_ACTIONS];
+    private final Undo[] undos = new Undo[2*DEPTH]; //the records of each depth, for the draw and the action
+    private int traverser;
+
+    Walker(long seed){
+      rng = new Xoshiro256(seed);
+      for(int d = 0; d<DEPTH; d++) legal[d] = new ActionBuffer();
+      for(int d = 0; d<2*DEPTH; d++) undos[d] = new Undo();
+    }
+
+    void iterate(long i){
+      traverser = (int)(i&1);
+      s.scores = 0;
+      s.setNextPlayer(rng.nextInt(2));
+      s.newRound(PackedState.shuffle(PackedState.DECK, rng));
+      walk(0, 0);
+    }
+
+    //the value of the round to the traverser, from the draw of the next player, given the histogram of the discards
+    private double walk(int depth, int discards){
+      PackedState s = this.s;
+      Undo draw = undos[2*depth], act = undos[2*depth+1];
+      draw.save(s);
+      int drawn = s.draw();
+      int actor = s.nextPlayer;
+      ActionBuffer legal = this.legal[depth];
+      s.legalActions(drawn, legal);
+      int[] order = this.order[depth];
+      int n = CfrPolicy.order(s, legal, order);
+      int e = entry(CfrPolicy.infoset(s, drawn, discards), n);
+      int base = e*STRIDE;
+      float[] sigma = strategy[depth];
+      float positive = 0;
+      for(int k = 0; k<n; k++) positive += sigma[k] = e<0?0:tables[base+k];
+      for(int k = 0; k<n; k++) sigma[k] = positive>0?sigma[k]/positive:1f/n;
+      double value = 0;
+      if(actor==traverser){
+        double[] v = values[depth];
+        for(int k = 0; k<n; k++){
+          act.save(s);
+          v[k] = play(legal, order[k], drawn, depth, discards);
+          act.restore(s);
+          value += sigma[k]*v[k];
+        }
+        if(e>=0)
+          for(int k = 0; k<n; k++) tables[base+k] = (float)Math.max(0, tables[base+k]+v[k]-value);
+      }
+      else{
+        if(e>=0)
+          for(int k = 0; k<n; k++) tables[base+SUMS+k] += sigma[k];
+        float u = rng.nextInt(1<<24)*0x1p-24f;
+        int k = 0;
+        while(k<n-1 && (u -= sigma[k])>=0) k++;
+        act.save(s);
+        value = play(legal, order[k], drawn, depth, discards);
+        act.restore(s);
+      }
+      draw.restore(s);
+      return value;
+    }
+
+    //the value of the round to the traverser after a legal action
+    private double play(ActionBuffer legal, int i, int drawn, int depth, int discards){
+      Action a = legal.get(i);
+      int before = s.discardCounts;
+      s.play(a.player(), a.target(), PackedState.code(a.card()), PackedState.code(a.guess()), drawn);
+      if(s.roundOver()) return s.roundWinner()==traverser?1:-1;
+      for(int p = 0; p<2; p++)
+        for(int j = (before>>>(p*5))&0x1F, n = s.discardCount(p); j<n; j++) discards = Matchups.add(discards, PackedState.card(s.discard(p, j)));
+      return walk(depth+1, discards);
+    }
+  }
+
+  /**
+   * Trains a policy and writes it to a file.
+   * @param args the number of iterations, the number of threads (all cores by default),
+   * the path of the policy file (cfr.policy by default), and the base 2 logarithm of the table size (20 by default,
+   * over twice the information sets visited in a million iterations)
+   * @throws IOException if the policy file cannot be written
+   * **/
+  public static void main(String[] args) throws IOException{
+    long iterations = Long.parseLong(args[0]);
+    int threads = args.length>1?Integer.parseInt(args[1]):Runtime.getRuntime().availableProcessors();
+    String file = args.length>2?args[2]:"cfr.policy";
+    int bits = args.length>3?Integer.parseInt(args[3]):20;
+    CfrTrainer trainer = new CfrTrainer(bits);
+    long start = System.nanoTime();
+    trainer.train(iterations, threads, 1);
+    double seconds = (System.nanoTime()-start)/1e9;
+    CfrPolicy policy = trainer.policy();
+    policy.save(Paths.get(file));
+    System.out.printf("Trained %d iterations on %d threads in %.1fs (%.0f iterations/s), %d information sets, %d in the policy%n",
+      iterations, threads, seconds, iterations/seconds, trainer.infosets(), policy.size());
+  }
+}
@@ -0,0 +1,315 @@
+package loveletter;
+
+/**
+ * Samples complete game states consistent with what one player has seen, for search and rollout agents.
+ * A sample keeps every card the player can see or knows, deals the remaining unseen cards to the other players' hands
+ * and the deck, and respects what the player has learned from play since those players' cards last changed:
+ * a player who survives a guard does not hold the guessed card, the winner of a baron holds a higher card than the loser,
+ * players who tie a baron hold the same card, and a player who plays the King or the Prince does not keep the Countess.
+ * Facts are dropped when the player they concern plays, is targeted by a prince, or swaps hands,
+ * except that a swap carries the facts about each hand to its new holder.
+ * <p>
+ * Samples are exact rather than rejected: the joint distribution of the hidden hands (at most three players, so at most 512 combinations)
+ * is tabulated whenever the view changes, each combination weighted by the number of ways of dealing it from the unseen cards,
+ * and by any weights given for each player's card. A sample looks up one combination and shuffles the rest of the cards into the deck,
+ * writing to a state created by newSample(), so sampling allocates nothing.
+ * <p>
+ * The sampler is told of the round and every action through newRound and see, as an agent is.
+ * Sampling only reads the sampler, so several threads may sample at once, with their own generator and state,
+ * provided prepare() has been called since the view last changed.
+ * **/
+public final class Determiniser{
+
+  private static final int COMBINATIONS = 8*8*8; //the joint hands of three hidden players
+
+  private State view;
+  private int num;
+  private final int[] excluded = new int[4]; //bit c is set if player p cannot hold the card with code c
+  private final int[] tied = {-1, -1, -1, -1}; //the player known to hold the same card as player p, or -1
+  private final double[][] weights = new double[4][]; //the weight of each card for player p, by ordinal, or null
+
+  //the table of the current view
+  private long stamp = -1; //the state of the view the table was built for
+  private int hidden; //the number of players whose cards are hidden
+  private final int[] hiddenPlayers = new int[3];
+  private final int[] unseen = new int[9]; //the number of each unseen card, by code, less the cards known to be in hands
+  private int combinations;
+  private final int[] combination = new int[COMBINATIONS]; //the codes of the hidden players' cards, 4 bits each
+  private final double[] cumulative = new double[COMBINATIONS]; //the running total of the combinations' weights
+  private final int[] allowed = new int[3]; //the cards each hidden player may hold while tabulating
+  private final int[] counts = new int[9]; //the unseen cards left while tabulating
+  private boolean constrained; //false if the facts contradict each other and only the cards seen are used
+
+  /**
+   * Creates a sampler, which must be given a view by newRound before sampling.
+   * **/
+  public Determiniser(){}
+
+  /**
+   * Starts a new round, forgetting every fact and weight.
+   * @param start the player's view of the new round
+   * @throws IllegalArgumentException if the state is not a player's view
+   * **/
+  public void newRound(State start){
+    if(start.getPlayerIndex()==-1) throw new IllegalArgumentException("The sampler needs a player's view");
+    view = start;
+    num = start.numPlayers();
+    for(int p = 0; p<4; p++){
+      excluded[p] = 0;
+      tied[p] = -1;
+      weights[p] = null;
+    }
+    stamp = -1;
+  }
+
+  /**
+   * Records what an action reveals about the players' cards.
+   * @param act the action performed
+   * @param results the player's view after the action
+   * **/
+  public void see(Action act, State results){
+    view = results;
+    stamp = -1;
+    PackedState s = results.packed();
+    int a = act.player(), t = act.target();
+    int c = PackedState.code(act.card());
+    forget(a);//the actor may have played either card
+    if(c==PackedState.KING || c==PackedState.PRINCE) excluded[a] |= 1<<PackedState.COUNTESS;
+    if(c==PackedState.PRINCE){//the target drew a new card, and may now be protected by a discarded handmaid
+      forget(t);
+      return;
+    }
+    if(t!=-1 && t!=a && s.handmaid(t)) return;//the target was protected, so nothing happened
+    switch(c){
+      case PackedState.GUARD:
+        if(!s.eliminated(t)) excluded[t] |= 1<<PackedState.code(act.guess());
+        break;
+      case PackedState.BARON:
+        if(s.eliminated(a) || s.eliminated(t)){
+          int loser = s.eliminated(a)?a:t;
+          int lost = s.discard(loser, s.discardCount(loser)-1);
+          excluded[loser==a?t:a] |= (2<<lost)-1;//the winner holds a higher card
+        }
+        else{
+          if(tied[t]!=-1) tied[tied[t]] = -1;
+          tied[a] = t;
+          tied[t] = a;
+        }
+        break;
+      case PackedState.KING:{
+        int e = excluded[a];
+        excluded[a] = excluded[t];
+        excluded[t] = e;
+        int partner = tied[t];//the actor's facts were forgotten, so only the target can be tied
+        tied[t] = -1;
+        if(partner!=-1){
+          tied[a] = partner;
+          tied[partner] = a;
+        }
+        break;
+      }
+      default:
+    }
+  }
+
+  /**
+   * Weights the cards a player may hold, for instance by a belief about their hand.
+   * A sample then deals each combination of hidden hands in proportion to the product of its players' weights
+   * and the number of ways it can be dealt. The weights last until the next round, or until replaced.
+   * @param player the player whose cards are weighted
+   * @param weights the weight of each card, indexed by ordinal, or null to weight every card equally
+   * @throws IllegalArgumentException if there are not eight weights, or a weight is negative
+   * **/
+  public void setWeights(int player, double[] weights){
+    if(weights!=null){
+      if(weights.length!=8) throw new IllegalArgumentException("A weight is needed for every card");
+      for(double w: weights)
+        if(!(w>=0)) throw new IllegalArgumentException("Weights may not be negative");
+      if(this.weights[player]==null) this.weights[player] = new double[8];
+      System.arraycopy(weights, 0, this.weights[player], 0, 8);
+    }
+    else this.weights[player] = null;
+    stamp = -1;
+  }
+
+  /**
+   * Tests whether a player is known not to hold a card, from the facts learned since their card last changed.
+   * @param player the player
+   * @param card the card
+   * @return true if the facts rule the card out
+   * **/
+  public boolean excluded(int player, Card card){
+    return (excluded[player] & (1<<PackedState.code(card)))!=0;
+  }
+
+  /**
+   * @param player the player
+   * @return the player known to hold the same card as this player, from a tied baron, or -1 if there is none
+   * **/
+  public int tied(int player){
+    return tied[player];
+  }
+
+  /**
+   * Creates a state for samples to be written to.
+   * Each thread sampling at once needs its own.
+   * @return a game state, with its players named by their index, that cannot deal a new round
+   * **/
+  public State newSample(){
+    return new State(num);
+  }
+
+  /**
+   * Tabulates the hidden hands for the view as it is now.
+   * Sampling does this itself when the view has changed, but threads that sample at once must share tables made beforehand.
+   * @throws IllegalStateException if newRound has not been called
+   * **/
+  public void prepare(){
+    if(view==null) throw new IllegalStateException("The sampler has no view");
+    PackedState s = view.packed();
+    long now = (long)s.discardCounts<<5 | s.top;//every action adds a discard, and every draw moves the top
+    if(now==stamp) return;
+    hidden = 0;
+    for(int c = 0; c<9; c++) unseen[c] = 0;
+    for(int i = s.top; i<16; i++) unseen[s.deckCard(i)]++;
+    int observer = view.getPlayerIndex();
+    for(int p = 0; p<num; p++){
+      if(s.eliminated(p)) continue;
+      if(s.knows(observer, p)) continue;
+      unseen[s.hand(p)]++;
+      hiddenPlayers[hidden++] = p;
+    }
+    constrained = true;
+    if(!tabulate(s)){//the facts contradict the cards, so fall back to the cards seen alone
+      constrained = false;
+      tabulate(s);
+    }
+    stamp = now;
+  }
+
+  /**
+   * Overwrites a state with a sample of the game consistent with the view.
+   * The player's own cards, every discard and every card the player knows are kept,
+   * the hidden hands are drawn from their joint distribution, and the remaining unseen cards are shuffled into the deck.
+   * @param rng the generator used to sample
+   * @param out a state created by newSample
+   * @return the state
+   * @throws IllegalStateException if newRound has not been called
+   * **/
+  public State sample(Rng rng, State out){
+    prepare();
+    PackedState s = view.packed();
+    PackedState d = out.packed();
+    d.copyFrom(s);
+    long pool = 0;//the number of each card left to deal, 4 bits per code, so that threads share nothing
+    for(int c = 1; c<9; c++) pool |= (long)unseen[c]<<(c<<2);
+    if(hidden>0){
+      double u = (rng.nextInt(1<<30)+0.5)*0x1p-30*cumulative[combinations-1];
+      int lo = 0, hi = combinations-1;
+      while(lo<hi){
+        int mid = (lo+hi)>>>1;
+        if(cumulative[mid]>u) hi = mid;
+        else lo = mid+1;
+      }
+      int hands = combination[lo];
+      for(int i = 0; i<hidden; i++){
+        int card = (hands>>>(i<<2))&0xF;
+        d.setHand(hiddenPlayers[i], card);
+        pool -= 1L<<(card<<2);
+      }
+    }
+    //deal the rest into the deck in random order, a card at a time by its count
+    int left = 16-s.top;
+    d.deck = 0;//the cards already drawn are not revealed
+    for(int i = s.top; i<16; i++, left--){
+      int r = rng.nextInt(left);
+      int card = 1;
+      for(int n; r>=(n = (int)(pool>>>(card<<2))&0xF); card++) r -= n;
+      pool -= 1L<<(card<<2);
+      d.deck |= ((long)card)<<(i<<2);
+    }
+    return out;
+  }
+
+  //the tables of the view for the endgame solver, valid after prepare
+  int hidden(){return hidden;}
+
+  int hiddenPlayer(int i){return hiddenPlayers[i];}
+
+  int unseen(int code){return unseen[code];}
+
+  int combinations(){return combinations;}
+
+  //the codes of the hidden players' cards in a combination, 4 bits each
+  int combination(int i){return combination[i];}
+
+  double weight(int i){return i==0?cumulative[0]:cumulative[i]-cumulative[i-1];}
+
+  State view(){return view;}
+
+  //lists every combination of hidden hands with a positive weight, returning false if there are none
+  private boolean tabulate(PackedState s){
+    combinations = 0;
+    for(int i = 0; i<hidden; i++){
+      int p = hiddenPlayers[i];
+      int mask = 0x1FE;
+      if(constrained){
+        mask &= ~excluded[p];
+        int q = tied[p];
+        if(q!=-1 && !hiddenTied(q)){//the partner's card is known, or was discarded when they were eliminated
+          int card = s.eliminated(q)?s.discard(q, s.discardCount(q)-1):s.hand(q);
+          mask &= 1<<card;
+        }
+      }
+      allowed[i] = mask;
+    }
+    for(int c = 0; c<9; c++) counts[c] = unseen[c];
+    enumerate(0, 0, 1.0, 0.0);
+    return combinations>0;
+  }
+
+  private boolean hiddenTied(int q){
+    for(int i = 0; i<hidden; i++)
+      if(hiddenPlayers[i]==q) return true;
+    return false;
+  }
+
+  //adds the combinations extending the cards of the first i hidden players, returning the running total
+  private double enumerate(int i, int hands, double weight, double total){
+    if(i==hidden){
+      total += weight;
+      combination[combinations] = hands;
+      cumulative[combinations++] = total;
+      return total;
+    }
+    int p = hiddenPlayers[i];
+    for(int card = 1; card<9; card++){
+      if(counts[card]==0 || (allowed[i] & (1<<card))==0) continue;
+      if(constrained && !tieHolds(i, hands, card)) continue;
+      double w = weight*counts[card];
+      if(constrained && weights[p]!=null) w *= weights[p][card-1];
+      if(w==0) continue;
+      counts[card]--;
+      total = enumerate(i+1, hands | card<<(i<<2), w, total);
+      counts[card]++;
+    }
+    return total;
+  }
+
+  //checks a card against the card of an earlier hidden player tied to this one
+  private boolean tieHolds(int i, int hands, int card){
+    int q = tied[hiddenPlayers[i]];
+    for(int j = 0; j<i; j++)
+      if(hiddenPlayers[j]==q) return ((hands>>>(j<<2))&0xF)==card;
+    return true;
+  }
+
+  //drops the facts about a player's card
+  private void forget(int p){
+    excluded[p] = 0;
+    if(tied[p]!=-1){
+      tied[tied[p]] = -1;
+      tied[p] = -1;
+    }
+  }
+}
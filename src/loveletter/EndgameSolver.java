@@ -0,0 +1,284 @@
+package loveletter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves the end of a round exactly, once few enough cards remain in the deck, so that an agent can override its usual choice.
+ * The solver averages over every combination of the hidden hands a Determiniser allows, weighted by its chance,
+ * and within each one runs expectimax to the end of the round: every draw, including a prince's, is a chance node over the
+ * cards left in the deck, the player maximises its chance of winning the round and every opponent minimises it.
+ * The action returned is the legal action with the highest chance of winning averaged over the hands, which is optimal under this model.
+ * <p>
+ * Within a combination of hands every card is in place, so a guard that chose its guess from the hands would never miss.
+ * Guesses after the root are therefore made as a player who cannot see the hands would make them:
+ * the card the guesser knows the target holds, or else the most common card the guesser has not seen, preferring the higher card.
+ * Guesses at the root are chosen by the average over the hands like any other action.
+ * <p>
+ * Positions are stored in a TranspositionTable under a Zobrist hash of what decides the rest of the round:
+ * the hands, the last discard and the total value of each discard pile, the cards left in the deck regardless of order,
+ * who knows whose card, the next player and the player solving. A table may be shared by solvers on several threads.
+ * The search gives up, returning no action, if it exceeds its time budget.
+ * **/
+public final class EndgameSolver{
+
+  /**The largest deck the solver attempts by default**/
+  public static final int MAX_DECK = 5;
+
+  private static final long[][] HAND = new long[4][9];
+  private static final long[][] LAST = new long[4][9];
+  private static final long[][] SUM = new long[4][64];
+  private static final long[][] DECK = new long[9][6];
+  private static final long[][] KNOWN = new long[2][256];
+  private static final long[] NEXT = new long[4];
+  private static final long[] SOLVER = new long[4];
+  static{
+    Xoshiro256 keys = new Xoshiro256(0x5EEDL);
+    fill(HAND, keys);
+    fill(LAST, keys);
+    fill(SUM, keys);
+    fill(DECK, keys);
+    fill(KNOWN, keys);
+    for(int p = 0; p<4; p++){
+      NEXT[p] = keys.nextLong();
+      SOLVER[p] = keys.nextLong();
+    }
+  }
+
+  private static void fill(long[][] table, Xoshiro256 keys){
+    for(long[] row: table)
+      for(int i = 0; i<row.length; i++) row[i] = keys.nextLong();
+  }
+
+  /**Thrown through the search when the time budget is spent**/
+  private static final class Timeout extends RuntimeException{
+    private static final long serialVersionUID = 1L;
+    Timeout(){super("Endgame budget spent", null, false, false);}
+  }
+  private static final Timeout TIMEOUT = new Timeout();
+
+  private final TranspositionTable table;
+  private final long budgetNanos;
+  private final int maxDeck;
+  private final ActionBuffer[] buffers = new ActionBuffer[20]; //the actions at each depth of the search
+  private final Undo[] undos = new Undo[40]; //the records of each depth, two per ply for a draw and an action
+  private final ActionBuffer root = new ActionBuffer();
+  private PackedState world;
+  private int me;
+  private long deadline;
+  private long nodes;
+  private double value = Double.NaN;
+
+  /**
+   * Creates a solver with its own table of 2^16 entries, a budget of one millisecond and the default largest deck.
+   * **/
+  public EndgameSolver(){
+    this(new TranspositionTable(16), 1, TimeUnit.MILLISECONDS, MAX_DECK);
+  }
+
+  /**
+   * Creates a solver.
+   * @param table the table of solved positions, which may be shared with other solvers
+   * @param budget the longest time a solve may take
+   * @param unit the unit of the budget
+   * @param maxDeck the largest deck, counted by State.deckSize() after the player's draw, for which the solver attempts a solve
+   * **/
+  public EndgameSolver(TranspositionTable table, long budget, TimeUnit unit, int maxDeck){
+    this.table = table;
+    this.budgetNanos = unit.toNanos(budget);
+    this.maxDeck = maxDeck;
+    for(int i = 0; i<buffers.length; i++) buffers[i] = new ActionBuffer();
+    for(int i = 0; i<undos.length; i++) undos[i] = new Undo();
+  }
+
+  /**
+   * Finds the action with the highest chance of winning the round, for the player whose view the sampler follows,
+   * when it is that player's turn and few enough cards remain.
+   * @param worlds a sampler following the player's view, whose facts and weights give the chance of each combination of hands
+   * @param drawn the card the player has drawn
+   * @return the best action, or null if the deck is too large, it is not the player's turn, or the budget ran out
+   * **/
+  public Action solve(Determiniser worlds, Card drawn){
+    value = Double.NaN;
+    State view = worlds.view();
+    PackedState s = view.packed();
+    me = view.getPlayerIndex();
+    if(s.nextPlayer!=me || view.deckSize()>maxDeck) return null;
+    int n = view.legalActions(drawn, root);
+    if(n==0) return null;
+    worlds.prepare();
+    if(world==null || world.num!=s.num) world = new PackedState(s.num);
+    deadline = System.nanoTime()+budgetNanos;
+    nodes = 0;
+    double[] totals = new double[n];
+    int code = PackedState.code(drawn);
+    try{
+      for(int w = 0; w<worlds.combinations(); w++){
+        double weight = worlds.weight(w);
+        if(weight==0) continue;
+        deal(worlds, w);
+        for(int i = 0; i<n; i++) totals[i] += weight*act(Action.of(root.index(i)), code, 0);
+      }
+    }catch(Timeout t){
+      return null;
+    }
+    int best = 0;
+    for(int i = 1; i<n; i++)
+      if(totals[i]>totals[best]) best = i;
+    double total = 0;
+    for(int w = 0; w<worlds.combinations(); w++) total += worlds.weight(w);
+    value = totals[best]/total;
+    return root.get(best);
+  }
+
+  /**
+   * @return the chance of winning the round with the action the last solve returned, or NaN if it returned none
+   * **/
+  public double value(){return value;}
+
+  /**
+   * @return the number of positions searched by the last solve
+   * **/
+  public long nodes(){return nodes;}
+
+  //sets the world to the view with the hidden hands of a combination, and the rest of the unseen cards in the deck
+  private void deal(Determiniser worlds, int w){
+    PackedState s = worlds.view().packed();
+    world.copyFrom(s);
+    int hands = worlds.combination(w);
+    long pool = 0;
+    for(int c = 1; c<9; c++) pool |= (long)worlds.unseen(c)<<(c<<2);
+    for(int i = 0; i<worlds.hidden(); i++){
+      int card = (hands>>>(i<<2))&0xF;
+      world.setHand(worlds.hiddenPlayer(i), card);
+      pool -= 1L<<(card<<2);
+    }
+    world.deck = 0;
+    int pos = s.top;
+    for(int c = 1; c<9; c++)
+      for(int k = (int)(pool>>>(c<<2))&0xF; k>0; k--) world.deck |= ((long)c)<<((pos++)<<2);
+  }
+
+  //the chance the solver wins the round after the next player draws, averaged over the cards in the deck
+  private double draw(int depth){
+    PackedState s = world;
+    if(s.roundOver()) return s.roundWinner()==me?1:0;
+    if((++nodes & 1023)==0 && System.nanoTime()>deadline) throw TIMEOUT;
+    long key = hash(s);
+    double cached = table.get(key);
+    if(!Double.isNaN(cached)) return cached;
+    double total = 0;
+    int size = s.deckSize();
+    long seen = 0;//the codes already drawn at this node
+    for(int i = s.top; i<16; i++){
+      int card = s.deckCard(i);
+      if((seen & (1L<<card))!=0) continue;
+      seen |= 1L<<card;
+      int count = 0;
+      for(int j = i; j<16; j++)
+        if(s.deckCard(j)==card) count++;
+      Undo undo = undos[2*depth];
+      undo.save(s);
+      swapToTop(s, i);
+      int drawn = s.draw();
+      total += count*choose(drawn, depth);
+      undo.restore(s);
+    }
+    double v = total/size;
+    table.put(key, v);
+    return v;
+  }
+
+  //the chance the solver wins with the best action of the next player, holding a drawn card
+  private double choose(int drawn, int depth){
+    PackedState s = world;
+    int actor = s.nextPlayer;
+    ActionBuffer legal = buffers[depth];
+    s.legalActions(drawn, legal);
+    int n = legal.size();
+    boolean max = actor==me;
+    double best = max?-1:2;
+    for(int i = 0; i<n; i++){
+      Action act = Action.of(legal.index(i));
+      if(act.card()==Card.GUARD && PackedState.code(act.guess())!=guess(actor, act.target())) continue;
+      double v = act(act, drawn, depth+1);
+      if(max?v>best:v<best) best = v;
+      if(best==(max?1:0)) break;//no action can do better
+    }
+    return best;
+  }
+
+  //the chance the solver wins after an action, averaged over the card a prince's target draws
+  private double act(Action act, int drawn, int depth){
+    PackedState s = world;
+    int a = act.player(), t = act.target();
+    int c = PackedState.code(act.card());
+    int g = PackedState.code(act.guess());
+    Undo undo = undos[2*depth+1];
+    if(c==PackedState.PRINCE && s.hand(t)!=PackedState.PRINCESS && !(a==t && s.hand(a)==c && drawn==PackedState.PRINCESS)){
+      //the target discards and draws, so each card left in the deck may be drawn
+      double total = 0;
+      int size = s.deckSize();
+      long seen = 0;
+      for(int i = s.top; i<16; i++){
+        int card = s.deckCard(i);
+        if((seen & (1L<<card))!=0) continue;
+        seen |= 1L<<card;
+        int count = 0;
+        for(int j = i; j<16; j++)
+          if(s.deckCard(j)==card) count++;
+        undo.save(s);
+        swapToTop(s, i);
+        s.play(a, t, c, g, drawn);
+        total += count*draw(depth);
+        undo.restore(s);
+      }
+      return total/size;
+    }
+    undo.save(s);
+    s.play(a, t, c, g, drawn);
+    double v = draw(depth);
+    undo.restore(s);
+    return v;
+  }
+
+  //the guess of a player who cannot see the hands: the target's card if known, or the most common card the guesser has not seen
+  private int guess(int guesser, int target){
+    PackedState s = world;
+    if(s.knows(guesser, target)) return s.hand(target)==PackedState.GUARD?PackedState.PRIEST:s.hand(target);
+    long counts = 0;
+    for(int i = s.top; i<16; i++) counts += 1L<<(s.deckCard(i)<<2);
+    for(int p = 0; p<s.num; p++)
+      if(p!=guesser && !s.eliminated(p) && !s.knows(guesser, p)) counts += 1L<<(s.hand(p)<<2);
+    int best = PackedState.PRIEST;
+    int most = 0;
+    for(int c = PackedState.PRIEST; c<=PackedState.PRINCESS; c++){
+      int k = (int)(counts>>>(c<<2))&0xF;
+      if(k>=most && k>0){
+        most = k;
+        best = c;
+      }
+    }
+    return best;
+  }
+
+  private static void swapToTop(PackedState s, int i){
+    int top = s.top;
+    long a = s.deckCard(top), b = s.deckCard(i);
+    s.deck ^= ((a^b)<<(top<<2)) | ((a^b)<<(i<<2));
+  }
+
+  //the hash of what decides the rest of the round, before the next player draws
+  private long hash(PackedState s){
+    long h = SOLVER[me]^NEXT[s.nextPlayer]^KNOWN[0][s.known&0xFF]^KNOWN[1][(s.known>>>8)&0xFF];
+    for(int p = 0; p<s.num; p++){
+      int n = s.discardCount(p);
+      int sum = 0;
+      for(int j = 0; j<n; j++) sum += s.discard(p, j);
+      h ^= HAND[p][s.hand(p)]^LAST[p][n==0?0:s.discard(p, n-1)]^SUM[p][sum];
+    }
+    long counts = 0;//4 bits per code
+    for(int i = s.top; i<16; i++) counts += 1L<<(s.deckCard(i)<<2);
+    for(int c = 1; c<9; c++) h ^= DECK[c][(int)(counts>>>(c<<2))&0xF];
+    return h;
+  }
+}
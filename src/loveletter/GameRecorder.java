@@ -0,0 +1,79 @@
+package loveletter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A narrator that records each game it observes in the RecordFormat, 
+ * appending it to a RecordWriter when the game is over.
+ * The record is built in a reusable buffer, so recording allocates nothing.
+ * A recorder observes one game at a time, so each thread should use its own recorder.
+ * **/
+public class GameRecorder implements Narrator{
+
+  private RecordWriter out;
+  private byte[] record = new byte[RecordFormat.MAX_GAME];
+  private int length; //the number of bytes of the game recorded
+  private int roundStart; //the position of the current round's action count, or -1 between rounds
+
+  /**
+   * Creates a recorder for the given writer
+   * @param out the writer the games are appended to
+   * **/
+  public GameRecorder(RecordWriter out){
+    this.out = out;
+    roundStart = -1;
+  }
+
+  /**
+   * Drops any part of a game left by a game that failed before it was over.
+   * @param game the state of the new game
+   * **/
+  public void gameStart(State game){
+    length = 0;
+    roundStart = -1;
+  }
+
+  /**
+   * Records an action, starting a new game or round as needed.
+   * @param outcome the outcome of the action
+   * @param game the state of the game after the action
+   * **/
+  public void narrate(Outcome outcome, State game){
+    if(length==0){//the first action of a game
+      record[0] = (byte)game.numPlayers();
+      record[1] = 0;
+      length = 2;
+    }
+    if(roundStart==-1){//the first action of a round
+      long deal = game.packed().deck;
+      for(int i = 0; i<8; i++) record[length++] = (byte)(deal>>>(i<<3));
+      roundStart = length++;
+      record[roundStart] = 0;
+      record[1]++;
+    }
+    record[length++] = (byte)RecordFormat.encode(outcome.action());
+    record[roundStart]++;
+    int winner = outcome.roundWinner();
+    if(winner!=-1){
+      record[length++] = (byte)winner;
+      roundStart = -1;
+    }
+  }
+
+  /**
+   * Appends the recorded game to the writer.
+   * @param game the state of the finished game
+   * @throws UncheckedIOException if the record cannot be written
+   * **/
+  public void gameOver(State game){
+    try{
+      if(length>0) out.write(record, length);
+    }catch(IOException e){
+      throw new UncheckedIOException(e);
+    }finally{
+      length = 0;
+      roundStart = -1;
+    }
+  }
+}
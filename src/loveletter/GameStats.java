@@ -0,0 +1,207 @@
+package loveletter;
+
+/**
+ * A narrator that aggregates statistics over every game it observes: 
+ * win rates by seat, by starting card and by the card held at the end of the round,
+ * the effects of actions (including the causes of elimination), round lengths and how often each card is played.
+ * Every statistic is a fixed array of counts, so the memory used does not grow with the number of games,
+ * and observing an action costs a few increments.
+ * A collector observes one game at a time, so each thread should use its own collector, 
+ * merging them at the end. Every field is a count, so the totals do not depend on the order of merging.
+ * **/
+public class GameStats implements Narrator{
+
+  private static final int CARDS = 9; //indexed by card code, 0 is unused
+  private static final int MAX_ACTIONS = 16; //the most actions a round can take
+  private static final Outcome.Effect[] EFFECTS = Outcome.Effect.values();
+
+  private long games;
+  private long rounds;
+  private long actions;
+  private long[] seatGames = new long[4]; //the games played in each seat
+  private long[] seatWins = new long[4]; //the games won by each seat
+  private long[] seatRounds = new long[4]; //the rounds played in each seat
+  private long[] seatRoundWins = new long[4]; //the rounds won by each seat
+  private long[] startHands = new long[CARDS]; //the number of times each card was dealt
+  private long[] startWins = new long[CARDS]; //the rounds won by a player dealt each card
+  private long[] endHands = new long[CARDS]; //the number of times each card was held at the end of the round
+  private long[] endWins = new long[CARDS]; //the rounds won holding each card
+  private long[] plays = new long[CARDS]; //the number of times each card was played
+  private long[] effects = new long[EFFECTS.length]; //the number of actions with each effect
+  private long[] roundLengths = new long[MAX_ACTIONS+1]; //the number of rounds of each length in actions
+  private int roundActions; //the number of actions so far in the current round
+  private int dealt; //the hands dealt at the start of the current round, packed as in PackedState
+
+  /**
+   * Creates a collector with no games observed
+   * **/
+  public GameStats(){}
+
+  /**
+   * Forgets the round left unfinished by a game that failed, so the next round is counted from its deal.
+   * @param game the state of the new game
+   * **/
+  public void gameStart(State game){
+    roundActions = 0;
+  }
+
+  /**
+   * Records an action, and the end of the round if the action ended it.
+   * @param outcome the outcome of the action
+   * @param game the state of the game after the action
+   * **/
+  public void narrate(Outcome outcome, State game){
+    PackedState s = game.packed();
+    int num = s.num;
+    if(roundActions==0){//the first action of a round, so the deck still holds the deal
+      dealt = 0;
+      for(int p = 0; p<num; p++) dealt |= s.deckCard(p)<<(p<<2);
+    }
+    roundActions++;
+    actions++;
+    plays[PackedState.code(outcome.action().card())]++;
+    effects[outcome.effect().ordinal()]++;
+    int winner = outcome.roundWinner();
+    if(winner==-1) return;
+    rounds++;
+    roundLengths[Math.min(roundActions, MAX_ACTIONS)]++;
+    roundActions = 0;
+    seatRoundWins[winner]++;
+    for(int p = 0; p<num; p++){
+      seatRounds[p]++;
+      int start = (dealt>>>(p<<2))&0xF;
+      startHands[start]++;
+      if(p==winner) startWins[start]++;
+      int end = s.hand(p);
+      if(end!=PackedState.NONE){
+        endHands[end]++;
+        if(p==winner) endWins[end]++;
+      }
+    }
+  }
+
+  /**
+   * Records the winner of a game.
+   * @param game the state of the finished game
+   * **/
+  public void gameOver(State game){
+    games++;
+    for(int p = 0; p<game.numPlayers(); p++) seatGames[p]++;
+    int winner = game.gameWinner();
+    if(winner!=-1) seatWins[winner]++;
+    roundActions = 0;
+  }
+
+  /**
+   * Adds the statistics of another collector to these statistics.
+   * @param other the collector to add
+   * **/
+  public void merge(GameStats other){
+    games += other.games;
+    rounds += other.rounds;
+    actions += other.actions;
+    add(seatGames, other.seatGames);
+    add(seatWins, other.seatWins);
+    add(seatRounds, other.seatRounds);
+    add(seatRoundWins, other.seatRoundWins);
+    add(startHands, other.startHands);
+    add(startWins, other.startWins);
+    add(endHands, other.endHands);
+    add(endWins, other.endWins);
+    add(plays, other.plays);
+    add(effects, other.effects);
+    add(roundLengths, other.roundLengths);
+  }
+
+  private static void add(long[] to, long[] from){
+    for(int i = 0; i<to.length; i++) to[i] += from[i];
+  }
+
+  private static double rate(long count, long total){return total==0?0:(double)count/total;}
+
+  /**
+   * @return the number of games observed
+   * **/
+  public long games(){return games;}
+
+  /**
+   * @return the number of rounds observed
+   * **/
+  public long rounds(){return rounds;}
+
+  /**
+   * @return the number of actions observed
+   * **/
+  public long actions(){return actions;}
+
+  /**
+   * @param seat the index of the seat
+   * @return the fraction of the games played in the seat that it won
+   * **/
+  public double seatWinRate(int seat){return rate(seatWins[seat], seatGames[seat]);}
+
+  /**
+   * @param seat the index of the seat
+   * @return the fraction of the rounds played in the seat that it won
+   * **/
+  public double seatRoundWinRate(int seat){return rate(seatRoundWins[seat], seatRounds[seat]);}
+
+  /**
+   * @param card the card dealt
+   * @return the fraction of rounds won by players dealt the card
+   * **/
+  public double startWinRate(Card card){
+    int c = PackedState.code(card);
+    return rate(startWins[c], startHands[c]);
+  }
+
+  /**
+   * @param card the card held
+   * @return the fraction of rounds won by the players still holding the card at the end of the round
+   * **/
+  public double endWinRate(Card card){
+    int c = PackedState.code(card);
+    return rate(endWins[c], endHands[c]);
+  }
+
+  /**
+   * @param card the card played
+   * @return the number of times the card was played
+   * **/
+  public long plays(Card card){return plays[PackedState.code(card)];}
+
+  /**
+   * @param effect the effect of an action
+   * @return the number of actions with the effect
+   * **/
+  public long effects(Outcome.Effect effect){return effects[effect.ordinal()];}
+
+  /**
+   * @param length a number of actions
+   * @return the number of rounds that took that many actions
+   * **/
+  public long roundLengths(int length){return length<0 || length>MAX_ACTIONS?0:roundLengths[length];}
+
+  /**
+   * @return the mean number of actions per round
+   * **/
+  public double meanRoundLength(){return rate(actions, rounds);}
+
+  public String toString(){
+    StringBuilder str = new StringBuilder();
+    str.append(games+" games, "+rounds+" rounds, "+actions+" actions");
+    str.append("\nBy seat (games won, rounds won):");
+    for(int p = 0; p<4 && seatGames[p]>0; p++)
+      str.append(String.format("%n\t Seat %d: %.2f%%, %.2f%%", p, 100*seatWinRate(p), 100*seatRoundWinRate(p)));
+    str.append("\nBy card (rounds won when dealt, rounds won when held at the end, share of plays):");
+    for(Card c: Card.values())
+      str.append(String.format("%n\t %-9s %6.2f%% %6.2f%% %6.2f%%", c, 100*startWinRate(c), 100*endWinRate(c), 100*rate(plays(c), actions)));
+    str.append("\nEliminations:");
+    for(Outcome.Effect e: new Outcome.Effect[]{Outcome.Effect.GUARD_HIT, Outcome.Effect.BARON_ELIM, Outcome.Effect.PRINCE_PRINCESS, Outcome.Effect.PRINCESS_ELIM})
+      str.append(String.format("%n\t %-15s %d (%.3f per round)", e, effects(e), rate(effects(e), rounds)));
+    str.append(String.format("%nRound length: mean %.2f actions", meanRoundLength()));
+    for(int k = 1; k<=MAX_ACTIONS; k++)
+      if(roundLengths[k]>0) str.append(String.format("%n\t %2d: %.2f%%", k, 100*rate(roundLengths[k], rounds)));
+    return str.toString();
+  }
+}
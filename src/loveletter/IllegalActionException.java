@@ -5,8 +5,23 @@ package loveletter;
  **/
 public class IllegalActionException extends Exception{
 
+  private Legality reason; //the rule broken, or null if not a rule of play
+
   public IllegalActionException(String msg){
     super(msg);
   }
-}
 
+  /**
+   * Creates an exception for an action that breaks a rule of play.
+   * @param reason the rule broken
+   * **/
+  public IllegalActionException(Legality reason){
+    super(reason.toString());
+    this.reason = reason;
+  }
+
+  /**
+   * @return the rule of play broken by the action, or null if the exception has a different cause.
+   * **/
+  public Legality reason(){return reason;}
+}
@@ -0,0 +1,100 @@
+package loveletter;
+
+/**
+ * A histogram of latencies in nanoseconds, with logarithmic buckets each split into 16 linear sub-buckets,
+ * in the manner of HdrHistogram. Every value is recorded to within 1/16 (about 6%) of its magnitude,
+ * in a fixed array, so recording costs a few instructions and never allocates.
+ * A histogram is not synchronized: each thread records into its own histograms, which are merged at the end.
+ * **/
+public class LatencyHistogram{
+
+  private static final int SUB_BITS = 4; //the number of bits resolving each power of two
+  private static final int SUB = 1<<SUB_BITS;
+  private static final int BUCKETS = (64-SUB_BITS)*SUB; //enough for any non-negative long
+
+  private long[] counts = new long[BUCKETS];
+  private long count;
+  private long total;
+  private long max;
+
+  /**
+   * Creates an empty histogram
+   * **/
+  public LatencyHistogram(){}
+
+  //the bucket of a value: values below 2*SUB are exact, and each power of two above has SUB buckets.
+  private static int index(long value){
+    int shift = 63-Long.numberOfLeadingZeros(value|(2*SUB-1))-SUB_BITS;
+    return (shift<<SUB_BITS)+(int)(value>>>shift);
+  }
+
+  //the largest value recorded in a bucket
+  private static long highest(int index){
+    if(index<2*SUB) return index;
+    int shift = (index>>>SUB_BITS)-1;
+    long sub = (index&(SUB-1))+SUB;
+    return ((sub+1)<<shift)-1;
+  }
+
+  /**
+   * Records a latency.
+   * @param nanos the latency in nanoseconds, where negative values are recorded as 0.
+   * **/
+  public void record(long nanos){
+    if(nanos<0) nanos = 0;
+    counts[index(nanos)]++;
+    count++;
+    total += nanos;
+    if(nanos>max) max = nanos;
+  }
+
+  /**
+   * Adds the latencies of another histogram to this one.
+   * @param other the histogram to add
+   * **/
+  public void merge(LatencyHistogram other){
+    for(int i = 0; i<BUCKETS; i++) counts[i] += other.counts[i];
+    count += other.count;
+    total += other.total;
+    if(other.max>max) max = other.max;
+  }
+
+  /**
+   * @return the number of latencies recorded
+   * **/
+  public long count(){return count;}
+
+  /**
+   * @return the largest latency recorded, in nanoseconds
+   * **/
+  public long max(){return max;}
+
+  /**
+   * @return the mean latency, in nanoseconds
+   * **/
+  public double mean(){return count==0?0:(double)total/count;}
+
+  /**
+   * Gives the latency below which the given fraction of latencies fall, to within the precision of the histogram.
+   * @param fraction the fraction, between 0 and 1, such as 0.99 for the 99th percentile
+   * @return the latency in nanoseconds, or 0 if nothing has been recorded.
+   * **/
+  public long percentile(double fraction){
+    if(count==0) return 0;
+    long rank = Math.max(1, (long)Math.ceil(fraction*count));
+    long seen = 0;
+    for(int i = 0; i<BUCKETS; i++){
+      seen += counts[i];
+      if(seen>=rank) return Math.min(highest(i), max);
+    }
+    return max;
+  }
+
+  /**
+   * Summarises the histogram in microseconds
+   * **/
+  public String toString(){
+    return String.format("%d calls, p50 %.2fus, p99 %.2fus, p999 %.2fus, max %.2fus",
+      count, percentile(0.5)/1e3, percentile(0.99)/1e3, percentile(0.999)/1e3, max/1e3);
+  }
+}
@@ -0,0 +1,112 @@
+package loveletter;
+
+/**
+ * The latencies of every agent callback in a series of games, for each seat:
+ * playCard broken down by the card drawn, see and newRound.
+ * A profile is filled by LoveLetter.playGame when attached, and is not synchronized,
+ * so each thread should fill its own profile, merging them at the end.
+ * **/
+public class LatencyProfile{
+
+  private static final int SEE = 0; //the index of the see histograms, as no card has code 0
+  private static final int NEW_ROUND = 9; //the index of the newRound histograms
+
+  private LatencyHistogram[][] histograms = new LatencyHistogram[4][10]; //by seat, then by drawn card code, see or newRound
+
+  /**
+   * Creates an empty profile
+   * **/
+  public LatencyProfile(){}
+
+  //the histogram of a seat and callback, created when first needed
+  private LatencyHistogram histogram(int seat, int callback){
+    LatencyHistogram h = histograms[seat][callback];
+    if(h==null) h = histograms[seat][callback] = new LatencyHistogram();
+    return h;
+  }
+
+  /**
+   * Records the latency of a call to playCard.
+   * @param seat the seat of the agent
+   * @param drawn the card drawn by the agent
+   * @param nanos the latency in nanoseconds
+   * **/
+  public void playCard(int seat, Card drawn, long nanos){histogram(seat, PackedState.code(drawn)).record(nanos);}
+
+  /**
+   * Records the latency of a call to see.
+   * @param seat the seat of the agent
+   * @param nanos the latency in nanoseconds
+   * **/
+  public void see(int seat, long nanos){histogram(seat, SEE).record(nanos);}
+
+  /**
+   * Records the latency of a call to newRound.
+   * @param seat the seat of the agent
+   * @param nanos the latency in nanoseconds
+   * **/
+  public void newRound(int seat, long nanos){histogram(seat, NEW_ROUND).record(nanos);}
+
+  /**
+   * Adds the latencies of another profile to this one.
+   * @param other the profile to add
+   * **/
+  public void merge(LatencyProfile other){
+    for(int s = 0; s<4; s++)
+      for(int c = 0; c<10; c++)
+        if(other.histograms[s][c]!=null) histogram(s, c).merge(other.histograms[s][c]);
+  }
+
+  /**
+   * @param seat the seat of the agent
+   * @param drawn the card drawn
+   * @return the latencies of playCard when the given card was drawn
+   * **/
+  public LatencyHistogram playCard(int seat, Card drawn){return histogram(seat, PackedState.code(drawn));}
+
+  /**
+   * @param seat the seat of the agent
+   * @return the latencies of playCard, whatever card was drawn
+   * **/
+  public LatencyHistogram playCard(int seat){
+    LatencyHistogram all = new LatencyHistogram();
+    for(int c = PackedState.GUARD; c<=PackedState.PRINCESS; c++)
+      if(histograms[seat][c]!=null) all.merge(histograms[seat][c]);
+    return all;
+  }
+
+  /**
+   * @param seat the seat of the agent
+   * @return the latencies of see
+   * **/
+  public LatencyHistogram see(int seat){return histogram(seat, SEE);}
+
+  /**
+   * @param seat the seat of the agent
+   * @return the latencies of newRound
+   * **/
+  public LatencyHistogram newRound(int seat){return histogram(seat, NEW_ROUND);}
+
+  /**
+   * Reports the latencies of each seat that was profiled
+   * @param names the name of the agent in each seat
+   * @return the report
+   * **/
+  public String toString(String[] names){
+    StringBuilder str = new StringBuilder("Agent latencies:");
+    for(int s = 0; s<names.length; s++){
+      str.append("\n\t Agent "+s+", \""+names[s]+"\"");
+      str.append("\n\t\t playCard: "+playCard(s));
+      for(Card c: Card.values())
+        if(histograms[s][PackedState.code(c)]!=null) 
+          str.append(String.format("%n\t\t   %-9s %s", c, histograms[s][PackedState.code(c)]));
+      str.append("\n\t\t see:      "+see(s));
+      str.append("\n\t\t newRound: "+newRound(s));
+    }
+    return str.toString();
+  }
+
+  public String toString(){
+    return toString(new String[]{"0","1","2","3"});
+  }
+}
@@ -0,0 +1,44 @@
+package loveletter;
+
+/**An enumeration of the reasons an action may be against the rules.
+ * Rules are checked by returning one of these codes, 
+ * so that legality can be tested without constructing exceptions.
+ * An IllegalActionException is only thrown where an action is executed or constructed.
+ * **/
+public enum Legality {
+    LEGAL("Legal action"),
+    NO_ACTION("No action specified"),
+    NULL_CARD("Null card specified in action"),
+    PLAYER_OUT_OF_RANGE("Player out of range"),
+    NO_TARGET("Target must be specified"),
+    UNEXPECTED_TARGET("Card does not take a target"),
+    SELF_TARGET("Player cannot target themself"),
+    NULL_GUESS("Player cannot guess a null card"),
+    GUARD_GUESS("Player cannot guess a guard"),
+    UNEXPECTED_GUESS("Only the guard takes a guess"),
+    NOT_HELD("Player does not hold the played card"),
+    WRONG_PLAYER("Wrong player in action"),
+    MUST_PLAY_COUNTESS("Player must play the countess"),
+    TARGET_ELIMINATED("The action's target is already eliminated"),
+    TARGET_PROTECTED("The action's target is protected by the handmaid");
+
+    private String message; //String description of the rule broken
+
+    /**
+     * Creates the code with a description.
+     * @param message a description of the rule broken
+     * **/
+    private Legality(String message){
+      this.message = message;
+    }
+
+    /**
+     * @return true if and only if this code represents a legal action
+     * **/
+    public boolean legal(){return this==LEGAL;}
+
+    /**
+     * @return a description of the rule broken
+     * **/
+    public String toString(){return message;}
+}
@@ -0,0 +1,408 @@
+package loveletter;
+
+/**
+ * Plays many rounds of Love Letter at once, for Monte Carlo rollouts with simple policies.
+ * Each field of the game state is a primitive array indexed by game, and every unfinished game
+ * is advanced by one turn at a time, in separate passes to draw cards, choose moves and resolve them,
+ * so each pass is a tight loop over contiguous arrays with no objects or virtual calls per game.
+ * The rules are those of State, but no knowledge of other players' cards is tracked,
+ * so policies see the whole state and only policies that ignore hidden information should be used.
+ * For full-fidelity play with agents, use State and LoveLetter.
+ * **/
+public final class LockstepSimulator{
+
+  /**
+   * A policy choosing the moves of every unfinished game together.
+   * **/
+  public interface Policy{
+    /**
+     * Chooses a legal move for the next player of each game, having drawn a card.
+     * @param sim the simulator
+     * @param games the games to choose moves for, in its first count elements
+     * @param count the number of games
+     * @param drawn the code of the card drawn in each game
+     * @param moves the move for each game, to be written as by LockstepSimulator.move
+     * **/
+    public void choose(LockstepSimulator sim, int[] games, int count, int[] drawn, int[] moves);
+  }
+
+  /**
+   * The policy of RandomAgent: each card weighted by the share of all players that are its legal targets,
+   * or fully if it takes no target, never the princess, then any legal target and guess for that card with equal chance.
+   * **/
+  public static final Policy RANDOM = LockstepSimulator::random;
+
+  private static final long GAMMA = 0x9E3779B97F4A7C15L; //the SplitMix64 increment
+
+  private final int num; //the number of players in every game
+  private final int size; //the number of games
+  private final long[] deck; //the deck of each game, packed as in PackedState
+  private final int[] top; //the index of the top of each deck
+  private final int[] hands; //the card of player p in bits 4p to 4p+3, or 0 if eliminated
+  private final int[] alive; //bit p is set if player p is still in the round
+  private final int[] shielded; //bit p is set if player p's last discard was the handmaid
+  private final int[] discardSums; //the total value of player p's discards in bits 8p to 8p+7
+  private final int[] next; //the next player to draw in each game
+  private final int[] winner; //the winner of each round, or -1 if it is not over
+  private final long[] seeds; //the SplitMix64 state of each game's random numbers
+  //the unfinished games, and the card drawn and move chosen in each during a step
+  private final int[] live;
+  private final int[] slots; //the index of each game in live, or -1 if it is finished
+  private final int[] drawn;
+  private final int[] moves;
+  private int liveCount;
+  private Policy policy = RANDOM;
+
+  /**
+   * Creates a simulator with every game over, until a round is dealt or loaded.
+   * @param size the number of games
+   * @param num the number of players in each game
+   * @param seed the seed of the random numbers of every game
+   * @throws IllegalArgumentException if the number of games or players is invalid
+   * **/
+  public LockstepSimulator(int size, int num, long seed){
+    if(size<1) throw new IllegalArgumentException("at least one game is required");
+    if(num<2 || num>4) throw new IllegalArgumentException("incorrect number of players");
+    this.size = size;
+    this.num = num;
+    deck = new long[size];
+    top = new int[size];
+    hands = new int[size];
+    alive = new int[size];
+    shielded = new int[size];
+    discardSums = new int[size];
+    next = new int[size];
+    winner = new int[size];
+    seeds = new long[size];
+    live = new int[size];
+    slots = new int[size];
+    drawn = new int[size];
+    moves = new int[size];
+    java.util.Arrays.fill(winner, -1);
+    java.util.Arrays.fill(slots, -1);
+    for(int g = 0; g<size; g++) seeds[g] = seed+g*GAMMA;
+  }
+
+  /**
+   * Sets the policy choosing every player's moves, which is RANDOM by default.
+   * @param policy the policy
+   * **/
+  public void setPolicy(Policy policy){this.policy = policy;}
+
+  /**
+   * Deals a new round in every game, each from its own shuffled deck, with player 0 to play first.
+   * **/
+  public void deal(){
+    for(int g = 0; g<size; g++){
+      long d = PackedState.DECK;
+      for(int i = 15; i>0; i--){//a Fisher-Yates shuffle, as in PackedState.shuffle
+        int j = random(g, i+1);
+        long x = ((d>>>(i<<2)) ^ (d>>>(j<<2))) & 0xF;
+        d ^= (x<<(i<<2)) | (x<<(j<<2));
+      }
+      deal(g, d, 0);
+    }
+  }
+
+  /**
+   * Deals a new round in a game from the given deck, as in State.
+   * @param game the index of the game
+   * @param deck the deck, packed with the code of card i in bits 4i to 4i+3
+   * @param first the player to play first
+   * **/
+  public void deal(int game, long deck, int first){
+    this.deck[game] = deck;
+    int h = 0;
+    for(int p = 0; p<num; p++) h |= (int)(deck>>>(p<<2)&0xF)<<(p<<2);
+    hands[game] = h;
+    top[game] = num;
+    alive[game] = (1<<num)-1;
+    shielded[game] = 0;
+    discardSums[game] = 0;
+    next[game] = first;
+    winner[game] = -1;
+    activate(game);
+  }
+
+  /**
+   * Copies the round in progress of a game state into a game,
+   * for instance to roll out a determinised position.
+   * @param game the index of the game
+   * @param state a game state (not a player state) with the same number of players
+   * @throws IllegalArgumentException if the state is a player state or has a different number of players
+   * **/
+  public void load(int game, State state){
+    if(state.getPlayerIndex()!=-1) throw new IllegalArgumentException("player states cannot be loaded");
+    if(state.numPlayers()!=num) throw new IllegalArgumentException("incorrect number of players");
+    PackedState s = state.packed();
+    deck[game] = s.deck;
+    top[game] = s.top;
+    hands[game] = s.hands;
+    int a = 0, sh = 0, sums = 0;
+    for(int p = 0; p<num; p++){
+      if(!s.eliminated(p)) a |= 1<<p;
+      if(s.handmaid(p)) sh |= 1<<p;
+      int dv = 0;
+      for(int j = 0, n = s.discardCount(p); j<n; j++) dv += s.discard(p, j);
+      sums |= dv<<(p<<3);
+    }
+    alive[game] = a;
+    shielded[game] = sh;
+    discardSums[game] = sums;
+    next[game] = s.nextPlayer;
+    winner[game] = s.roundOver()?s.roundWinner():-1;
+    if(winner[game]==-1) activate(game);
+    else deactivate(game);
+  }
+
+  //adds a game to the unfinished games, if it is not already there
+  private void activate(int game){
+    if(slots[game]!=-1) return;
+    slots[game] = liveCount;
+    live[liveCount++] = game;
+  }
+
+  //removes a game from the unfinished games, if it is there, moving the last unfinished game into its place
+  private void deactivate(int game){
+    int i = slots[game];
+    if(i==-1) return;
+    int last = live[--liveCount];
+    live[i] = last;
+    slots[last] = i;
+    slots[game] = -1;
+  }
+
+  /**
+   * Plays one turn of every unfinished game.
+   * @return the number of games still unfinished
+   * **/
+  public int step(){
+    int n = liveCount;
+    for(int i = 0; i<n; i++){
+      int g = live[i];
+      drawn[i] = (int)(deck[g]>>>(top[g]<<2))&0xF;
+      top[g]++;
+    }
+    policy.choose(this, live, n, drawn, moves);
+    for(int i = 0; i<n; i++) resolve(live[i], drawn[i], moves[i]);
+    int k = 0;
+    for(int i = 0; i<n; i++){
+      int g = live[i];
+      if(winner[g]==-1){
+        slots[g] = k;
+        live[k++] = g;
+      }
+      else slots[g] = -1;
+    }
+    liveCount = k;
+    return k;
+  }
+
+  /**
+   * Plays every unfinished game to the end of its round.
+   * **/
+  public void run(){
+    while(liveCount>0) step();
+  }
+
+  //executes a legal move, as PackedState.play does
+  private void resolve(int g, int d, int move){
+    int a = next[g];
+    int c = move&0xF;
+    int t = ((move>>>4)&0xF)-1;
+    int guess = (move>>>8)&0xF;
+    discardSums[g] += c<<(a<<3);
+    shielded[g] &= ~(1<<a);
+    if(c==hand(g, a)) setHand(g, a, d);
+    boolean protect = (alive[g] & ~shielded[g] & ~(1<<a))==0;//every other player is protected
+    switch(c){
+      case PackedState.GUARD:
+        if(!protect && hand(g, t)==guess) eliminate(g, t);
+        break;
+      case PackedState.BARON:
+        if(!protect){
+          int ha = hand(g, a), ht = hand(g, t);
+          if(ha>ht) eliminate(g, t);
+          else if(ha<ht) eliminate(g, a);
+        }
+        break;
+      case PackedState.HANDMAID:
+        shielded[g] |= 1<<a;
+        break;
+      case PackedState.PRINCE:{
+        int discard = hand(g, t);
+        discardSums[g] += discard<<(t<<3);
+        if(discard==PackedState.HANDMAID) shielded[g] |= 1<<t;//the discard is the last, as in State
+        else shielded[g] &= ~(1<<t);
+        if(discard==PackedState.PRINCESS){
+          setHand(g, t, PackedState.NONE);
+          alive[g] &= ~(1<<t);
+        }
+        else setHand(g, t, (int)(deck[g]>>>(top[g]++<<2))&0xF);
+        break;
+      }
+      case PackedState.KING:
+        if(!protect){
+          int ha = hand(g, a);
+          setHand(g, a, hand(g, t));
+          setHand(g, t, ha);
+        }
+        break;
+      case PackedState.PRINCESS:
+        eliminate(g, a);
+        break;
+      default://the priest reveals a card no one tracks, and the countess has no effect
+    }
+    int left = alive[g];
+    if(Integer.bitCount(left)==1 || top[g]>14){
+      int w = -1, best = -1;
+      for(int p = 0; p<num; p++)
+        if((left & (1<<p))!=0){
+          int key = hand(g, p)<<8 | (discardSums[g]>>>(p<<3))&0xFF;//the highest card, then the highest discards
+          if(key>best){
+            w = p;
+            best = key;
+          }
+        }
+      winner[g] = w;
+      next[g] = w;
+    }
+    else{
+      do a = (a+1)%num; while((left & (1<<a))==0);
+      next[g] = a;
+    }
+  }
+
+  private void eliminate(int g, int p){
+    discardSums[g] += hand(g, p)<<(p<<3);
+    setHand(g, p, PackedState.NONE);
+    alive[g] &= ~(1<<p);
+  }
+
+  private void setHand(int g, int p, int code){
+    hands[g] = (hands[g] & ~(0xF<<(p<<2))) | (code<<(p<<2));
+  }
+
+  //the RANDOM policy
+  private static void random(LockstepSimulator sim, int[] games, int count, int[] drawn, int[] moves){
+    for(int i = 0; i<count; i++){
+      int g = games[i];
+      int a = sim.next[g];
+      int h = sim.hand(g, a), d = drawn[i];
+      boolean countess = h==PackedState.COUNTESS || d==PackedState.COUNTESS;
+      int others = sim.alive[g] & ~(1<<a);
+      int open = others & ~sim.shielded[g];
+      int c = h;
+      if(h!=d){//each card weighs the share of all players that are its legal targets
+        int wh = sim.weight(h, a, countess, others, open), wd = sim.weight(d, a, countess, others, open);
+        if(wh==0 || (wd>0 && sim.random(g, wh+wd)>=wh)) c = d;
+      }
+      int targets = targets(c, a, others, open);
+      int t = -1;
+      if(targets!=0){
+        for(int r = sim.random(g, Integer.bitCount(targets)); r>0; r--) targets &= targets-1;
+        t = Integer.numberOfTrailingZeros(targets);
+      }
+      int guess = c==PackedState.GUARD?PackedState.PRIEST+sim.random(g, 7):PackedState.NONE;
+      moves[i] = move(c, t, guess);
+    }
+  }
+
+  //the legal targets of a card, as bits, or 0 if it has none
+  private static int targets(int c, int a, int others, int open){
+    switch(c){
+      case PackedState.PRINCE: return open | (1<<a);
+      case PackedState.GUARD:
+      case PackedState.PRIEST:
+      case PackedState.BARON:
+      case PackedState.KING: return open!=0?open:others;
+      default: return 0;
+    }
+  }
+
+  //the chance of the RANDOM policy playing a card, in units of one player's share of half the chances
+  private int weight(int c, int a, boolean countess, int others, int open){
+    if(c==PackedState.PRINCESS) return 0;
+    if(countess && (c==PackedState.KING || c==PackedState.PRINCE)) return 0;
+    int targets = targets(c, a, others, open);
+    return targets==0?num:Integer.bitCount(targets);
+  }
+
+  /**
+   * Encodes a move for a policy to choose.
+   * @param card the code of the card played, which is its value
+   * @param target the target of the card, or -1
+   * @param guess the code of the guessed card for a guard, or 0
+   * @return the encoded move
+   * **/
+  public static int move(int card, int target, int guess){
+    return card | (target+1)<<4 | guess<<8;
+  }
+
+  /**
+   * Produces a nearly uniform random integer from a game's own random numbers,
+   * so that the games do not depend on each other or on the order they are stepped in.
+   * @param game the index of the game
+   * @param bound the upper bound (exclusive), which must be positive
+   * @return a random integer between 0 (inclusive) and bound (exclusive)
+   * **/
+  public int random(int game, int bound){
+    long z = seeds[game] += GAMMA;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    z ^= z >>> 31;
+    return (int)(((z>>>32) * bound)>>>32);
+  }
+
+  /**
+   * @return the number of games
+   * **/
+  public int size(){return size;}
+
+  /**
+   * @return the number of players in each game
+   * **/
+  public int numPlayers(){return num;}
+
+  /**
+   * @return the number of games whose round is not over
+   * **/
+  public int unfinished(){return liveCount;}
+
+  /**
+   * @param game the index of the game
+   * @param player the index of the player
+   * @return the code of the card the player holds, or 0 if they are eliminated
+   * **/
+  public int hand(int game, int player){return (hands[game]>>>(player<<2))&0xF;}
+
+  /**
+   * @param game the index of the game
+   * @return a mask with bit p set if player p is still in the round
+   * **/
+  public int alive(int game){return alive[game];}
+
+  /**
+   * @param game the index of the game
+   * @return a mask with bit p set if player p is protected by the handmaid
+   * **/
+  public int protectedPlayers(int game){return shielded[game] & alive[game];}
+
+  /**
+   * @param game the index of the game
+   * @return the number of cards left in the deck, including the burnt card
+   * **/
+  public int deckSize(int game){return 16-top[game];}
+
+  /**
+   * @param game the index of the game
+   * @return the next player to draw a card
+   * **/
+  public int nextPlayer(int game){return next[game];}
+
+  /**
+   * @param game the index of the game
+   * @return the winner of the game's round, or -1 if it is not over
+   * **/
+  public int winner(int game){return winner[game];}
+}
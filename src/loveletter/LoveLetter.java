@@ -1,6 +1,11 @@
 package loveletter;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.io.PrintStream;
 import agents.RandomAgent;
 
@@ -15,7 +20,12 @@ public class LoveLetter {
 
 	private Agent rando;
 	private Random random;
+	private Rng rng;
 	private PrintStream ps;
+	private Narrator narrator;
+	private LatencyProfile latency;
+	private Supervisor supervisor;
+	private boolean[] timedOut = new boolean[4]; // the seats that overran a deadline in the last game
 
 	/**
 	 * Constructs a LoveLetter game.
@@ -29,6 +39,19 @@ public class LoveLetter {
 		rando = new RandomAgent();
 	}
 
+	/**
+	 * Constructs a LoveLetter game that deals with a Fisher-Yates shuffle from the
+	 * given generator. The deals differ from those of a seeded java.util.Random.
+	 * 
+	 * @param rng the random number generator for the deals.
+	 * @param ps  a PrintStream object to record the events of the game
+	 **/
+	public LoveLetter(Rng rng, PrintStream ps) {
+		this.rng = rng;
+		this.ps = ps;
+		rando = new RandomAgent();
+	}
+
 	/**
 	 * Constructs a LoveLetter game. Defauklt construct with system random seed, and
 	 * System.out as the PrintStream
@@ -38,6 +61,67 @@ public class LoveLetter {
 		this.ps = System.out;
 	}
 
+	/**
+	 * Seeds the agent that replaces illegal actions, so that games can be
+	 * reproduced.
+	 * 
+	 * @param seed the seed for the replacement agent
+	 **/
+	public void seed(long seed) {
+		rando.seed(seed);
+	}
+
+	/**
+	 * Attaches a narrator to record the events of the games played. Actions are
+	 * only described when a narrator is attached.
+	 * 
+	 * @param narrator the narrator, or null to play without narration
+	 **/
+	public void setNarrator(Narrator narrator) {
+		this.narrator = narrator;
+	}
+
+	/**
+	 * Attaches a profile to record the latency of every agent callback. The
+	 * callbacks are only timed when a profile is attached.
+	 * 
+	 * @param latency the profile, or null to play without timing
+	 **/
+	public void setLatency(LatencyProfile latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Sets the generator for the deals of the games played from now on.
+	 * 
+	 * @param rng the random number generator for the deals.
+	 **/
+	public void setRng(Rng rng) {
+		this.rng = rng;
+	}
+
+	/**
+	 * Attaches a supervisor to enforce a deadline on every agent callback. An
+	 * agent that overruns the deadline times out: it is not called again for
+	 * the rest of the game, and its moves are made by a random agent instead.
+	 * 
+	 * @param supervisor the supervisor, or null to call agents directly
+	 **/
+	public void setSupervisor(Supervisor supervisor) {
+		this.supervisor = supervisor;
+	}
+
+	/**
+	 * Reports whether an agent timed out in the last game played. An agent that
+	 * timed out may still be running, so it should not be used again.
+	 * 
+	 * @param seat the seat of the agent
+	 * @return true if and only if the agent overran a deadline
+	 **/
+	public boolean timedOut(int seat) {
+		return timedOut[seat];
+	}
+
 	/**
 	 * Plays a game of LoveLetter
 	 * 
@@ -48,29 +132,37 @@ public class LoveLetter {
 		boolean gameOver = false;
 		int winner = 0;
 		int numPlayers = agents.length;
-		State gameState = new State(random, agents);// the game state
+		State gameState = rng != null ? new State(rng, agents) : new State(random, agents);// the game state
 		State[] playerStates = new State[numPlayers];
+		Outcome outcome = new Outcome();
+		Arrays.fill(timedOut, false);
+		if (narrator != null)
+			narrator.gameStart(gameState);
 		try {
 			while (!gameState.gameOver()) {
 				for (int i = 0; i < numPlayers; i++) {
 					playerStates[i] = gameState.playerState(i);
-					agents[i].newRound(playerStates[i]);
+					newRound(agents[i], i, playerStates[i]);
 				}
 				while (!gameState.roundOver()) {
 					Card topCard = gameState.drawCard();
-					Action act = agents[gameState.nextPlayer()].playCard(topCard);
+					Action act = playCard(agents[gameState.nextPlayer()], gameState.nextPlayer(), topCard);
 					try {
-						gameState.update(act, topCard);
+						gameState.play(act, topCard, outcome);
 					} catch (IllegalActionException e) {
 						rando.newRound(gameState.playerState(gameState.nextPlayer()));
 						act = rando.playCard(topCard);
-						gameState.update(act, topCard);
+						gameState.play(act, topCard, outcome);
 					}
+					if (narrator != null)
+						narrator.narrate(outcome, gameState);
 					for (int p = 0; p < numPlayers; p++)
-						agents[p].see(act, playerStates[p]);
+						see(agents[p], p, act, playerStates[p]);
 				}
 				gameState.newRound();
 			}
+			if (narrator != null)
+				narrator.gameOver(gameState);
 			// ps.println("Player " + gameState.gameWinner() + " wins the Princess's
 			// heart!");
 			int[] scoreboard = new int[numPlayers];
@@ -84,51 +176,109 @@ public class LoveLetter {
 		}
 	}
 
+	// calls newRound on an agent, unless it has timed out, timing and
+	// supervising the call if required
+	private void newRound(Agent agent, int seat, State start) {
+		if (timedOut[seat])
+			return;
+		long time = latency == null ? 0 : System.nanoTime();
+		if (supervisor == null)
+			agent.newRound(start);
+		else
+			try {
+				supervisor.run(() -> agent.newRound(start));
+			} catch (TimeoutException e) {
+				timedOut[seat] = true;
+			}
+		if (latency != null)
+			latency.newRound(seat, System.nanoTime() - time);
+	}
+
+	// asks an agent for its action, returning null if it has timed out, timing
+	// and supervising the call if required
+	private Action playCard(Agent agent, int seat, Card drawn) {
+		if (timedOut[seat])
+			return null;
+		long time = latency == null ? 0 : System.nanoTime();
+		Action act = null;
+		if (supervisor == null)
+			act = agent.playCard(drawn);
+		else
+			try {
+				act = supervisor.call(() -> agent.playCard(drawn));
+			} catch (TimeoutException e) {
+				timedOut[seat] = true;
+			}
+		if (latency != null)
+			latency.playCard(seat, drawn, System.nanoTime() - time);
+		return act;
+	}
+
+	// shows an action to an agent, unless it has timed out, timing and
+	// supervising the call if required
+	private void see(Agent agent, int seat, Action act, State results) {
+		if (timedOut[seat])
+			return;
+		long time = latency == null ? 0 : System.nanoTime();
+		if (supervisor == null)
+			agent.see(act, results);
+		else
+			try {
+				supervisor.run(() -> agent.see(act, results));
+			} catch (TimeoutException e) {
+				timedOut[seat] = true;
+			}
+		if (latency != null)
+			latency.see(seat, System.nanoTime() - time);
+	}
+
 	/**
 	 * This main method is provided to run a simple test game with provided agents.
 	 * The agent implementations should be in the default package.
 	 */
 	public static void main(String[] args) {
-		Random rand = new Random();
 		// get the number of tests to run from the args, deafult to 1
 		int testCount = 1;
 		if (args.length > 0) {
 			testCount = Integer.parseInt(args[0]);
 		}
-		int timWins = 0; // keep track of how many times my AI wins
-		int[] winCounts = new int[4];
-		Agent[] agents = { new agents.RandomAgent(),new agents.RandomAgent(),new agents.TimsAgent(),new agents.RandomAgent() };
-		int timIndex = 2;
-		for (int j = 0; j < testCount; j++) {
-			LoveLetter env = new LoveLetter();
-			int[] results = env.playGame(agents);
-			int maxScoreIndex = 0;
-			int maxScore = 0;
-			for (int i = 0; i < agents.length; i++) {
-				if (results[i] > maxScore) {
-					maxScoreIndex = i;
-					maxScore = results[i];
-				}
-			}
-			if (maxScoreIndex == timIndex) {
-				timWins++;
-			}
-			winCounts[maxScoreIndex]++;
-		}
-		float winRate = (float) timWins / (float) testCount * 100;
+		// an optional master seed makes the run reproducible
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : new Random().nextLong();
+		List<Supplier<? extends Agent>> seats = Arrays.asList(agents.RandomAgent::new, agents.RandomAgent::new,
+				agents.TimsAgent::new, agents.RandomAgent::new);
+		int timIndex = 2; // the seat of my AI
+		BatchRunner runner = new BatchRunner(seats);
+		// optional arguments after the seed print detailed statistics of the games,
+		// and the latency of each agent, set a deadline for each agent callback, or
+		// run each game on its own thread
+		List<String> options = Arrays.asList(args).subList(Math.min(args.length, 2), args.length);
+		runner.setStats(options.contains("stats"));
+		runner.setLatency(options.contains("latency"));
+		for (String option : options)
+			if (option.startsWith("deadline="))
+				runner.setMoveDeadline(Long.parseLong(option.substring(9)), TimeUnit.MILLISECONDS);
+		int concurrency = 0; // the games in progress at once, each on its own thread, or 0 for a worker per core
+		for (String option : options)
+			if (option.startsWith("concurrent="))
+				concurrency = Integer.parseInt(option.substring(11));
+		BatchResult results = concurrency > 0 ? runner.runConcurrent(seed, testCount, concurrency)
+				: runner.run(seed, testCount);
+		float winRate = (float) results.winRate(timIndex) * 100;
+		for (int i = 0; i < 4; i++)
+			if (results.timeouts(i) > 0)
+				System.out.println("Agent " + i + " timed out in " + results.timeouts(i) + " games");
 		System.out.printf("Tim won %.1f%% of the time. Random chance is 25.0%%\n", winRate);
-		
+
+		Agent[] names = runner.createAgents();
 		for (int i = 0; i < 4; i++)
-			System.out.printf("\t Agent " + i + ", \"" + agents[i].toString() + "\":\t " + winCounts[i] + "\n");
+			System.out.printf("\t Agent " + i + ", \"" + names[i].toString() + "\":\t " + results.wins(i) + "\n");
+		if (results.stats() != null)
+			System.out.println(results.stats());
+		if (results.latency() != null) {
+			String[] agentNames = new String[names.length];
+			for (int i = 0; i < names.length; i++)
+				agentNames[i] = names[i].toString();
+			System.out.println(results.latency().toString(agentNames));
+		}
 	}
 }
-
-
-
-
-
-
-
-
-
-
@@ -0,0 +1,191 @@
+package loveletter;
+
+/**
+ * Precomputed chances for the card an opponent holds or a player draws, when it is equally likely to be any of a multiset of cards,
+ * such as the cards not yet played, so that a rule-based agent can answer each question with a single array load.
+ * A multiset is indexed by its histogram: the number of each card, from 0 to the card's count in the deck,
+ * packed in mixed radix so that removing a card only subtracts a constant.
+ * There are 6*3*3*3*3*2*2*2 = 3888 histograms, and the tables take about half a megabyte, built in a few milliseconds when the class is loaded,
+ * which agents using them trigger by calling init when they are loaded.
+ * Every chance of an empty histogram is 0.
+ * **/
+public final class Matchups{
+
+  /**The number of histograms, each an index from 0 to HISTOGRAMS-1**/
+  public static final int HISTOGRAMS;
+  /**The histogram of the full deck**/
+  public static final int FULL;
+
+  private static final Card[] CARDS = Card.values();
+  private static final int[] RADIX = new int[8]; //the place value of each card's count, by ordinal
+  private static final float[] BARON_WIN; //the chance a card held at [h<<3|ordinal] beats a card drawn from h
+  private static final float[] BARON_TIE;
+  private static final float[] BARON_LOSS;
+  private static final float[] GUARD_HIT; //the chance a card drawn from h is the guess at [h<<3|ordinal]
+  private static final float[] PRINCE_VALUE; //the mean value of a card drawn from h
+  private static final byte[] LIKELIEST; //the ordinal of the card with the largest share of its copies in h
+  private static final float[] LIKELIEST_SHARE;
+  static{
+    int[] copies = new int[8], values = new int[8]; //the deck count and value of each card, read once
+    int place = 1, full = 0;
+    for(int c = 0; c<8; c++){
+      copies[c] = CARDS[c].count();
+      values[c] = CARDS[c].value();
+      RADIX[c] = place;
+      full += copies[c]*place;
+      place *= copies[c]+1;
+    }
+    HISTOGRAMS = place;
+    FULL = full;
+    //filled through locals, which the interpreter running this initialiser reaches faster than static fields
+    float[] win = BARON_WIN = new float[HISTOGRAMS<<3];
+    float[] tie = BARON_TIE = new float[HISTOGRAMS<<3];
+    float[] loss = BARON_LOSS = new float[HISTOGRAMS<<3];
+    float[] hit = GUARD_HIT = new float[HISTOGRAMS<<3];
+    float[] prince = PRINCE_VALUE = new float[HISTOGRAMS];
+    byte[] likeliestCard = LIKELIEST = new byte[HISTOGRAMS];
+    float[] likeliestShare = LIKELIEST_SHARE = new float[HISTOGRAMS];
+    int histograms = HISTOGRAMS;
+    int[] counts = new int[8]; //the counts of histogram h, stepped like an odometer rather than decoded
+    int size = 0, sum = 0;
+    for(int h = 0; h<histograms; h++){
+      if(h>0){
+        int c = 0;
+        for(; counts[c]==copies[c]; c++){
+          size -= counts[c];
+          sum -= counts[c]*values[c];
+          counts[c] = 0;
+        }
+        counts[c]++;
+        size++;
+        sum += values[c];
+      }
+      int likeliest = 0;
+      float share = -1;
+      for(int c = 0; c<8; c++){
+        float f = (float)counts[c]/copies[c];
+        if(f>=share){//the higher card is preferred
+          share = f;
+          likeliest = c;
+        }
+      }
+      likeliestCard[h] = (byte)likeliest;
+      likeliestShare[h] = share;
+      if(size==0) continue;
+      prince[h] = (float)sum/size;
+      int below = 0;
+      for(int c = 0; c<8; c++){
+        int i = h<<3|c;
+        win[i] = (float)below/size;
+        tie[i] = (float)counts[c]/size;
+        loss[i] = (float)(size-below-counts[c])/size;
+        hit[i] = c==0?0:(float)counts[c]/size;//a guard may not be guessed
+        below += counts[c];
+      }
+    }
+  }
+
+  private Matchups(){}
+
+  /**
+   * Builds the tables, unless they are already built, so that an agent can pay for the build when its class is loaded
+   * rather than in its first timed callback. The build takes a few milliseconds, once per JVM.
+   * **/
+  public static void init(){}//loading the class runs the static initialiser
+
+  /**
+   * @param counts the number of each card, indexed by ordinal
+   * @return the histogram of the cards
+   * @throws IllegalArgumentException if a count is negative or more than the card's count in the deck
+   * **/
+  public static int histogram(int[] counts){
+    int h = 0;
+    for(int c = 0; c<8; c++){
+      if(counts[c]<0 || counts[c]>CARDS[c].count()) throw new IllegalArgumentException("There are "+counts[c]+" of the "+CARDS[c]);
+      h += counts[c]*RADIX[c];
+    }
+    return h;
+  }
+
+  /**
+   * @param cards the cards, which may include nulls to be ignored
+   * @return the histogram of the cards
+   * @throws IllegalArgumentException if there are more of a card than in the deck
+   * **/
+  public static int histogram(Card[] cards){
+    int[] counts = new int[8];
+    for(Card c: cards)
+      if(c!=null) counts[c.ordinal()]++;
+    return histogram(counts);
+  }
+
+  /**
+   * @param histogram a histogram with at least one of the card
+   * @param card the card to remove
+   * @return the histogram with one fewer of the card
+   * **/
+  public static int remove(int histogram, Card card){return histogram-RADIX[card.ordinal()];}
+
+  /**
+   * @param histogram a histogram with fewer of the card than the deck
+   * @param card the card to add
+   * @return the histogram with one more of the card
+   * **/
+  public static int add(int histogram, Card card){return histogram+RADIX[card.ordinal()];}
+
+  /**
+   * @param histogram a histogram
+   * @param card a card
+   * @return the number of the card in the histogram
+   * **/
+  public static int count(int histogram, Card card){
+    int c = card.ordinal();
+    return histogram/RADIX[c]%(CARDS[c].count()+1);
+  }
+
+  /**
+   * @param histogram a histogram
+   * @param held the card held by a player playing the baron
+   * @return the chance the card held is higher than a card drawn from the histogram, eliminating its holder
+   * **/
+  public static float baronWin(int histogram, Card held){return BARON_WIN[histogram<<3|held.ordinal()];}
+
+  /**
+   * @param histogram a histogram
+   * @param held the card held by a player playing the baron
+   * @return the chance the card held is the same as a card drawn from the histogram
+   * **/
+  public static float baronTie(int histogram, Card held){return BARON_TIE[histogram<<3|held.ordinal()];}
+
+  /**
+   * @param histogram a histogram
+   * @param held the card held by a player playing the baron
+   * @return the chance the card held is lower than a card drawn from the histogram, eliminating the player
+   * **/
+  public static float baronLoss(int histogram, Card held){return BARON_LOSS[histogram<<3|held.ordinal()];}
+
+  /**
+   * @param histogram a histogram
+   * @param guess the card guessed with a guard
+   * @return the chance a card drawn from the histogram is the guess, or 0 if the guess is the guard
+   * **/
+  public static float guardHit(int histogram, Card guess){return GUARD_HIT[histogram<<3|guess.ordinal()];}
+
+  /**
+   * @param histogram a histogram
+   * @return the expected value of a card drawn from the histogram, such as the card a prince's target draws
+   * **/
+  public static float princeValue(int histogram){return PRINCE_VALUE[histogram];}
+
+  /**
+   * @param histogram a histogram
+   * @return the card with the largest share of its copies in the deck left in the histogram, preferring the higher card
+   * **/
+  public static Card likeliest(int histogram){return CARDS[LIKELIEST[histogram]];}
+
+  /**
+   * @param histogram a histogram
+   * @return the share of the likeliest card's copies left in the histogram
+   * **/
+  public static float likeliestShare(int histogram){return LIKELIEST_SHARE[histogram];}
+}
@@ -0,0 +1,60 @@
+package loveletter;
+
+/**
+ * An interface for recording the events of a game of Love Letter.
+ * Descriptions of actions are only produced when a narrator is attached to a game.
+ * */
+public interface Narrator{
+
+  /**
+   * Method called when a game starts, before its first action.
+   * A game that fails is never reported as over, so a narrator should drop any part of a game it holds here.
+   * @param game the state of the new game
+   * **/
+  public default void gameStart(State game){}
+
+  /**
+   * Method called after each action is executed.
+   * @param outcome the outcome of the action
+   * @param game the state of the game after the action, which can describe the outcome.
+   * **/
+  public void narrate(Outcome outcome, State game);
+
+  /**
+   * Method called when a game is over.
+   * @param game the state of the finished game
+   * **/
+  public default void gameOver(State game){}
+
+  /**
+   * Creates a narrator that passes every event to this narrator, then to another.
+   * @param next the narrator to receive each event second
+   * @return the combined narrator
+   * **/
+  public default Narrator andThen(Narrator next){
+    Narrator first = this;
+    return new Narrator(){
+      public void gameStart(State game){
+        first.gameStart(game);
+        next.gameStart(game);
+      }
+      public void narrate(Outcome outcome, State game){
+        first.narrate(outcome, game);
+        next.narrate(outcome, game);
+      }
+      public void gameOver(State game){
+        first.gameOver(game);
+        next.gameOver(game);
+      }
+    };
+  }
+
+  /**
+   * Creates a narrator that prints the description of every action.
+   * @param ps the PrintStream the descriptions are printed to
+   * @return the narrator
+   * **/
+  public static Narrator print(java.io.PrintStream ps){
+    return (outcome, game) -> ps.println(game.describe(outcome));
+  }
+}
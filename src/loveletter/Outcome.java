@@ -0,0 +1,141 @@
+package loveletter;
+
+/**
+ * The structured result of executing an action: its effect, the player affected, 
+ * any card revealed or discarded, and the winner if the action ended the round.
+ * An outcome is filled by State.play and may be reused for every action of a game, 
+ * so no text or garbage is produced unless the outcome is described.
+ * **/
+public final class Outcome{
+
+  /**An enumeration of the effects an action can have**/
+  public enum Effect {
+    NO_EFFECT, //the handmaid or countess was played
+    PROTECTED, //every other player was protected by the handmaid, so the action did nothing
+    GUARD_HIT, //the guard's guess was correct and the subject is eliminated
+    GUARD_MISS, //the guard's guess was wrong
+    PRIEST_SEE, //the actor saw the subject's card
+    BARON_ELIM, //the subject held the lesser card and is eliminated
+    BARON_TIE, //both players held the same card
+    PRINCE_DISCARD, //the subject discarded a card and drew another
+    PRINCE_PRINCESS, //the subject discarded the princess and is eliminated
+    KING_SWAP, //the actor and subject swapped cards
+    PRINCESS_ELIM //the subject played the princess and is eliminated
+  }
+
+  private static final Effect[] EFFECTS = Effect.values();
+
+  private Action action;
+  private int code; //the outcome packed by PackedState.play
+
+  /**
+   * Creates an empty outcome, to be filled by State.play
+   * **/
+  public Outcome(){}
+
+  void set(Action action, int code){
+    this.action = action;
+    this.code = code;
+  }
+
+  /**
+   * @return the action that was executed
+   * **/
+  public Action action(){return action;}
+
+  /**
+   * @return the effect of the action
+   * **/
+  public Effect effect(){return EFFECTS[PackedState.effect(code)];}
+
+  /**
+   * @return the player the effect applies to: the target of the action, 
+   * the player eliminated by a baron, or the actor for the handmaid, countess and princess.
+   * **/
+  public int subject(){return PackedState.subject(code);}
+
+  /**
+   * @return the card revealed by the effect: the correctly or incorrectly guessed card,
+   * the card lost to a baron, the card discarded to a prince, or the card held with the princess;
+   * null if no card is revealed.
+   * **/
+  public Card card(){return PackedState.card(PackedState.revealed(code));}
+
+  /**
+   * @return the player eliminated by the action, or -1 if no player was eliminated.
+   * **/
+  public int eliminated(){
+    switch(effect()){
+      case GUARD_HIT:
+      case BARON_ELIM:
+      case PRINCE_PRINCESS:
+      case PRINCESS_ELIM: return subject();
+      default: return -1;
+    }
+  }
+
+  /**
+   * @return true if and only if the action swapped the cards of the actor and subject
+   * **/
+  public boolean swapped(){return effect()==Effect.KING_SWAP;}
+
+  /**
+   * @return the winner of the round if the action ended it, or -1 if the round continues.
+   * **/
+  public int roundWinner(){return PackedState.winner(code);}
+
+  /**
+   * Produces a plain English description of the outcome
+   * @param names the name of each player in the game
+   * @return the description
+   * **/
+  public String toString(String[] names){
+    int a = action.player();
+    int t = action.target();
+    int s = subject();
+    Card r = card();
+    String ret = action.toString(names[a], t!=-1?names[t]:"");
+    switch(effect()){
+      case PROTECTED:
+        ret+="\nPlayer "+names[s]+" is protected by the Handmaid.";
+        break;
+      case GUARD_HIT:
+        ret+="\nPlayer "+names[s]+" had the "+r+" and is eliminated from the round";
+        break;
+      case GUARD_MISS:
+        ret+="\nPlayer "+names[s]+" does not have the "+r;
+        break;
+      case PRIEST_SEE:
+        ret+="\nPlayer "+names[a]+" sees player "+names[s]+"'s card.";
+        break;
+      case BARON_ELIM:
+        ret+="\nPlayer "+names[s]+" holds the lesser card: "+r+", and is eliminated";
+        break;
+      case BARON_TIE:
+        ret+="\n Both players hold the same card, and neither is eliminated.";
+        break;
+      case PRINCE_DISCARD:
+        ret+="\nPlayer "+names[s]+" discards the "+r+".";
+        break;
+      case PRINCE_PRINCESS:
+        ret+="\nPlayer "+names[s]+" discarded the Princess and is eliminated.";
+        break;
+      case KING_SWAP:
+        ret+="\nPlayer "+names[a]+" and player "+names[s]+" swap cards.";
+        break;
+      case PRINCESS_ELIM:
+        ret+="\nPlayer "+names[s]+" played the Princess and is eliminated.";
+        ret+="\n Player "+names[s]+" was also holding the "+r+".";
+        break;
+      default://handmaid and countess have no effect
+    }
+    int winner = roundWinner();
+    if(winner!=-1)
+      ret+="\nPlayer "+winner+" wins the round.";
+    return ret;
+  }
+
+  public String toString(){
+    return toString(new String[]{"0","1","2","3"});
+  }
+}
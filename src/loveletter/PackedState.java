@@ -0,0 +1,455 @@
+package loveletter;
+
+/**
+ * The compact representation of a round of LoveLetter used by the game engine.
+ * All of the state is held in packed primitives so that simulating a round
+ * requires no allocation and no pointer chasing:
+ * the deck is sixteen 4 bit card codes in a long,
+ * the hands are 4 bit card codes in an int,
+ * each discard pile is a long of 4 bit card codes,
+ * the discard counts are 5 bit fields in an int,
+ * the knowledge matrix is a 16 bit mask and the scores are 8 bit fields in an int.
+ * A card code is the card's value (ordinal plus one), with 0 representing no card.
+ * A 64 bit Zobrist hash of the position is kept up to date by every change, at the cost of a few xors.
+ * This class is internal to the engine, and is observed through the State class.
+ * **/
+final class PackedState{
+
+  static final Card[] CARDS = Card.values();
+  static final int NONE = 0;
+  static final int GUARD = 1, PRIEST = 2, BARON = 3, HANDMAID = 4,
+                   PRINCE = 5, KING = 6, COUNTESS = 7, PRINCESS = 8;
+
+  //the effect of an action, stored in the low 4 bits of an outcome, in the order of Outcome.Effect
+  static final int NO_EFFECT = 0;//handmaid and countess
+  static final int PROTECTED = 1;//the target was protected by the handmaid
+  static final int GUARD_HIT = 2;//the guess was correct and the target eliminated
+  static final int GUARD_MISS = 3;
+  static final int PRIEST_SEE = 4;
+  static final int BARON_ELIM = 5;//the subject holds the lesser card and is eliminated
+  static final int BARON_TIE = 6;
+  static final int PRINCE_DISCARD = 7;
+  static final int PRINCE_PRINCESS = 8;//the subject discarded the princess and is eliminated
+  static final int KING_SWAP = 9;
+  static final int PRINCESS_ELIM = 10;
+
+  //the standard deck, in card order
+  static final long DECK = pack(new Card[]{
+    Card.GUARD, Card.GUARD, Card.GUARD, Card.GUARD, Card.GUARD, Card.PRIEST, Card.PRIEST, Card.BARON,
+    Card.BARON, Card.HANDMAID, Card.HANDMAID, Card.PRINCE, Card.PRINCE, Card.KING, Card.COUNTESS, Card.PRINCESS});
+
+  //KNOWN_COLUMN[num][q] has a bit set for every player p<num knowing q's card
+  private static final int[][] KNOWN_COLUMN = new int[5][4];
+  //KNOWN_ALL[num] has a bit set for every pair of players p,q<num
+  private static final int[] KNOWN_ALL = new int[5];
+  static{
+    for(int n = 0; n<5; n++)
+      for(int q = 0; q<4 && q<n; q++)
+        for(int p = 0; p<n; p++){
+          KNOWN_COLUMN[n][q] |= 1<<(p*4+q);
+          KNOWN_ALL[n] |= 1<<(p*4+q);
+        }
+  }
+
+  int num; //the number of players
+  long deck; //the deck, position i in bits 4i to 4i+3
+  int top; //the index of the top of the deck
+  int hands; //the card of player p in bits 4p to 4p+3, or 0 if eliminated
+  final long[] discards = new long[4]; //the discard pile of each player, oldest card in the low bits
+  int discardCounts; //the number of discards of player p in bits 5p to 5p+4
+  int known; //bit 4p+q is set if player p knows player q's card
+  int scores; //the score of player p in bits 8p to 8p+7
+  int nextPlayer; //the index of the next player to draw a card
+  long hash; //the Zobrist hash of the position, as computed by hash(0, -1)
+
+  //the Zobrist keys, in flat tables to spare a lookup: a card code c in seat p's hand at HAND_KEYS[p<<4|c],
+  //or at place i of its discard pile at DISCARD_KEYS[p<<8|i<<4|c], the top of the deck, each bit of the knowledge matrix and the next seat.
+  //A card's key depends only on its code, so identical cards hash alike.
+  private static final long[] HAND_KEYS = new long[64];
+  private static final long[] HIDDEN_KEYS = new long[4];//a hand the observer cannot see
+  private static final long[] OBSERVER_KEYS = new long[4];
+  private static final long[] DISCARD_KEYS = new long[1024];
+  private static final long[] TOP_KEYS = new long[17];
+  private static final long[] KNOWN_KEYS = new long[16];
+  private static final long[][] KNOWN_BYTES = new long[2][256]; //the xor of the keys of the bits set in each byte of the matrix
+  private static final long[] NEXT_KEYS = new long[4];
+  static{
+    Xoshiro256 keys = new Xoshiro256(0x2B1A5EEDL);
+    for(long[] table: new long[][]{HAND_KEYS, HIDDEN_KEYS, OBSERVER_KEYS, DISCARD_KEYS, TOP_KEYS, KNOWN_KEYS, NEXT_KEYS})
+      for(int i = 0; i<table.length; i++) table[i] = keys.nextLong();
+    for(int b = 0; b<2; b++)
+      for(int v = 1; v<256; v++)
+        KNOWN_BYTES[b][v] = KNOWN_BYTES[b][v&(v-1)]^KNOWN_KEYS[b*8+Integer.numberOfTrailingZeros(v)];
+  }
+
+  /**
+   * Creates an empty state for a game with the given number of players.
+   * @param num the number of players
+   * **/
+  PackedState(int num){
+    this.num = num;
+  }
+
+  /**
+   * @param c a card or null
+   * @return the code of the card, or 0 if the card is null
+   * **/
+  static int code(Card c){return c==null?NONE:c.ordinal()+1;}
+
+  /**
+   * @param code a card code
+   * @return the card with the given code, or null if the code is 0
+   * **/
+  static Card card(int code){return code==NONE?null:CARDS[code-1];}
+
+  /**
+   * Packs a dealt deck of 16 cards into a long
+   * @param cards the cards of the deck, in order
+   * @return the packed deck
+   * **/
+  static long pack(Card[] cards){
+    long d = 0;
+    for(int i = 0; i<16; i++) d |= ((long)code(cards[i]))<<(i<<2);
+    return d;
+  }
+
+  /**
+   * Shuffles a packed deck with a Fisher-Yates shuffle, swapping the 4 bit card codes in place.
+   * @param deck the packed deck
+   * @param rng the random number generator
+   * @return the shuffled deck
+   * **/
+  static long shuffle(long deck, Rng rng){
+    for(int i = 15; i>0; i--){
+      int j = rng.nextInt(i+1);
+      long x = ((deck>>>(i<<2)) ^ (deck>>>(j<<2))) & 0xF;
+      deck ^= (x<<(i<<2)) | (x<<(j<<2));
+    }
+    return deck;
+  }
+
+  /**
+   * Copies every field of another state into this one.
+   * @param o the state to copy
+   * **/
+  void copyFrom(PackedState o){
+    num = o.num;
+    deck = o.deck;
+    top = o.top;
+    hands = o.hands;
+    System.arraycopy(o.discards, 0, discards, 0, 4);
+    discardCounts = o.discardCounts;
+    known = o.known;
+    scores = o.scores;
+    nextPlayer = o.nextPlayer;
+    hash = o.hash;
+  }
+
+  /**
+   * Starts a new round with the given deck, dealing one card to each player.
+   * Scores and the next player are retained.
+   * @param deck the packed deck for the round
+   * **/
+  void newRound(long deck){
+    this.deck = deck;
+    top = 0;
+    hands = 0;
+    discards[0] = discards[1] = discards[2] = discards[3] = 0;
+    discardCounts = 0;
+    known = 0;
+    for(int p = 0; p<num; p++){
+      setHand(p, deckCard(top++));
+      known |= 1<<(p*5);
+    }
+    hash = hash(0, -1);
+  }
+
+  int deckCard(int i){return (int)(deck>>>(i<<2))&0xF;}
+
+  int draw(){
+    hash ^= TOP_KEYS[top]^TOP_KEYS[top+1];
+    return deckCard(top++);
+  }
+
+  int hand(int p){return (hands>>>(p<<2))&0xF;}
+
+  void setHand(int p, int code){
+    hash ^= HAND_KEYS[p<<4|hand(p)]^HAND_KEYS[p<<4|code];
+    hands = (hands & ~(0xF<<(p<<2))) | (code<<(p<<2));
+  }
+
+  int discardCount(int p){return (discardCounts>>>(p*5))&0x1F;}
+
+  int discard(int p, int i){return (int)(discards[p]>>>(i<<2))&0xF;}
+
+  void pushDiscard(int p, int code){
+    int n = discardCount(p);
+    discards[p] = (discards[p] & ~(0xFL<<(n<<2))) | (((long)code)<<(n<<2));
+    hash ^= DISCARD_KEYS[p<<8|n<<4|code];
+    discardCounts += 1<<(p*5);
+  }
+
+  boolean knows(int p, int q){return (known & (1<<(p*4+q)))!=0;}
+
+  void setKnown(int k){
+    int changed = known^k;
+    hash ^= KNOWN_BYTES[0][changed&0xFF]^KNOWN_BYTES[1][(changed>>>8)&0xFF];
+    known = k;
+  }
+
+  void setNextPlayer(int p){
+    hash ^= NEXT_KEYS[nextPlayer]^NEXT_KEYS[p];
+    nextPlayer = p;
+  }
+
+  int score(int p){return (scores>>>(p<<3))&0xFF;}
+
+  boolean eliminated(int p){return hand(p)==NONE;}
+
+  boolean handmaid(int p){
+    if(p<0 || p>=num) return false;
+    int n = discardCount(p);
+    return n>0 && discard(p, n-1)==HANDMAID;
+  }
+
+  //true if every player other than a is eliminated or protected
+  boolean allHandmaid(int a){
+    for(int i = 0; i<num; i++)
+      if(i!=a && !eliminated(i) && !handmaid(i)) return false;
+    return true;
+  }
+
+  int alive(){
+    int alive = 0;
+    for(int p = 0; p<num; p++)
+      if(!eliminated(p)) alive++;
+    return alive;
+  }
+
+  int deckSize(){return 16-top;}
+
+  boolean roundOver(){return alive()==1 || deckSize()<2;}
+
+  /**
+   * @return the index of the winner, or -1 if the round is not yet over.
+   * **/
+  int roundWinner(){
+    if(!roundOver()) return -1;
+    int winner = -1;
+    int topCard = -1;
+    int discardValue = -1;
+    for(int p = 0; p<num; p++){
+      int h = hand(p);
+      if(h!=NONE){
+        int dv = 0;
+        for(int j = 0, n = discardCount(p); j<n; j++) dv += discard(p, j);//a card's code is its value
+        if(h>topCard || (h==topCard && dv>discardValue)){
+          winner = p;
+          topCard = h;
+          discardValue = dv;
+        }
+      }
+    }
+    return winner;
+  }
+
+  /**
+   * Lists every legal action of the next player, who has drawn the given card.
+   * The actions are ordered by card, then target, then guess.
+   * @param drawn the code of the card drawn
+   * @param out the buffer the actions are written to
+   * **/
+  void legalActions(int drawn, ActionBuffer out){
+    out.clear();
+    int a = nextPlayer;
+    int h = hand(a);
+    boolean countess = h==COUNTESS || drawn==COUNTESS;
+    boolean noTarget = allHandmaid(a);
+    int lo = Math.min(h, drawn), hi = Math.max(h, drawn);
+    for(int c = lo; c!=NONE; c = c==hi?NONE:hi){
+      switch(c){
+        case GUARD:
+          for(int t = 0; t<num; t++)
+            if(t!=a && !eliminated(t) && (noTarget || !handmaid(t)))
+              for(int g = PRIEST; g<=PRINCESS; g++) out.add(c, a, t, g);
+          break;
+        case PRINCE:
+          if(countess) break;
+          for(int t = 0; t<num; t++)//a player can always target themselves with the prince
+            if(t==a || (!eliminated(t) && !handmaid(t))) out.add(c, a, t, NONE);
+          break;
+        case PRIEST:
+        case BARON:
+        case KING:
+          if(c==KING && countess) break;
+          for(int t = 0; t<num; t++)
+            if(t!=a && !eliminated(t) && (noTarget || !handmaid(t))) out.add(c, a, t, NONE);
+          break;
+        default://handmaid, countess and princess have no target
+          out.add(c, a, -1, NONE);
+      }
+    }
+  }
+
+  private void eliminate(int p){
+    pushDiscard(p, hand(p));
+    setHand(p, NONE);
+    setKnown(known | KNOWN_COLUMN[num][p]);
+  }
+
+  //every player other than p forgets p's card
+  private void forget(int p){
+    setKnown(known & (~KNOWN_COLUMN[num][p] | (1<<(p*5))));
+  }
+
+  /**
+   * Executes an action that has already been checked to be legal.
+   * The outcome packs the effect in bits 0-3, the player the effect applies to in bits 4-7,
+   * the card revealed or discarded by the effect in bits 8-11,
+   * and the round winner plus one in bits 12-15 (0 if the round continues).
+   * @param a the acting player
+   * @param t the target, or -1
+   * @param c the code of the card played
+   * @param guess the code of the guessed card for guard actions
+   * @param drawn the code of the card drawn by the actor
+   * @return the outcome of the action
+   * **/
+  int play(int a, int t, int c, int guess, int drawn){
+    pushDiscard(a, c);
+    if(c==hand(a)){//if the player played the card in their hand, insert the new card into their hand.
+      setHand(a, drawn);
+      forget(a);
+    }
+    int outcome;
+    switch(c){
+      case GUARD:
+        if(allHandmaid(a)) outcome = effect(PROTECTED, t, NONE);
+        else if(guess==hand(t)){
+          eliminate(t);
+          outcome = effect(GUARD_HIT, t, guess);
+        }
+        else outcome = effect(GUARD_MISS, t, guess);
+        break;
+      case PRIEST:
+        if(allHandmaid(a)) outcome = effect(PROTECTED, t, NONE);
+        else{
+          setKnown(known | 1<<(a*4+t));
+          outcome = effect(PRIEST_SEE, t, NONE);
+        }
+        break;
+      case BARON:
+        if(allHandmaid(a)) outcome = effect(PROTECTED, t, NONE);
+        else{
+          int ha = hand(a), ht = hand(t);
+          int elim = ha>ht?t:ha<ht?a:-1;
+          if(elim!=-1){
+            int lost = hand(elim);
+            eliminate(elim);
+            outcome = effect(BARON_ELIM, elim, lost);
+          }
+          else{
+            setKnown(known | (1<<(a*4+t)) | (1<<(t*4+a)));
+            outcome = effect(BARON_TIE, t, NONE);
+          }
+        }
+        break;
+      case PRINCE:{
+        int d = hand(t);
+        pushDiscard(t, d);
+        if(d==PRINCESS){
+          setHand(t, NONE);
+          setKnown(known | KNOWN_COLUMN[num][t]);
+          outcome = effect(PRINCE_PRINCESS, t, d);
+        }
+        else{
+          setHand(t, draw());
+          forget(t);
+          outcome = effect(PRINCE_DISCARD, t, d);
+        }
+        break;
+      }
+      case KING:
+        if(allHandmaid(a)) outcome = effect(PROTECTED, t, NONE);
+        else{
+          setKnown(known | (1<<(a*4+t)) | (1<<(t*4+a)));
+          int tmp = hand(a);
+          setHand(a, hand(t));
+          setHand(t, tmp);
+          outcome = effect(KING_SWAP, t, NONE);
+        }
+        break;
+      case PRINCESS:{
+        int held = hand(a);
+        eliminate(a);
+        outcome = effect(PRINCESS_ELIM, a, held);
+        break;
+      }
+      default://handmaid and countess require no update
+        outcome = effect(NO_EFFECT, a, NONE);
+    }
+    if(roundOver()){
+      setKnown(KNOWN_ALL[num]);
+      int winner = roundWinner();
+      scores += 1<<(winner<<3);
+      setNextPlayer(winner);
+      outcome |= (winner+1)<<12;
+    }
+    else{//set nextPlayer to next noneliminated player
+      int next = (nextPlayer+1)%num;
+      while(eliminated(next)) next = (next+1)%num;
+      setNextPlayer(next);
+    }
+    return outcome;
+  }
+
+  /**
+   * Computes the hash of the position from scratch, with the seats renumbered and the hidden hands masked.
+   * Every card in a hand or a discard pile is keyed by its seat and code (and place in the pile), 
+   * along with the top of the deck, the knowledge matrix and the next seat, 
+   * so the last discards, and with them the handmaid's protection, are covered, while the scores and the order of the deck are not.
+   * The cards left in the deck are those not in a hand or a discard pile, so they are covered as a multiset.
+   * hash(0, -1) is the hash field, which every change keeps up to date.
+   * @param first the player numbered as seat 0, the others following in turn order
+   * @param observer the player whose view is hashed, whose unknown opponents' hands are hidden, or -1 for the whole position
+   * @return the hash
+   * **/
+  long hash(int first, int observer){
+    long h = TOP_KEYS[top]^NEXT_KEYS[(nextPlayer-first+num)%num];
+    for(int p = 0; p<num; p++){
+      int s = (p-first+num)%num;
+      h ^= observer!=-1 && !eliminated(p) && !knows(observer, p)?HIDDEN_KEYS[s]:HAND_KEYS[s<<4|hand(p)];
+      for(int j = 0, n = discardCount(p); j<n; j++) h ^= DISCARD_KEYS[s<<8|j<<4|discard(p, j)];
+      for(int q = 0; q<num; q++)
+        if(knows(p, q)) h ^= KNOWN_KEYS[s*4+(q-first+num)%num];
+    }
+    if(observer!=-1) h ^= OBSERVER_KEYS[(observer-first+num)%num];
+    return h;
+  }
+
+  /**
+   * The hash of an observer's view, from the hash field in time linear in the number of players.
+   * @param observer the observing player
+   * @return hash(0, observer)
+   * **/
+  long viewHash(int observer){
+    long h = hash^OBSERVER_KEYS[observer];
+    for(int p = 0; p<num; p++)
+      if(!eliminated(p) && !knows(observer, p)) h ^= HAND_KEYS[p<<4|hand(p)]^HIDDEN_KEYS[p];
+    return h;
+  }
+
+  private static int effect(int kind, int subject, int card){
+    return kind | (subject<<4) | (card<<8);
+  }
+
+  static int effect(int outcome){return outcome&0xF;}
+
+  static int subject(int outcome){return (outcome>>>4)&0xF;}
+
+  static int revealed(int outcome){return (outcome>>>8)&0xF;}
+
+  /**
+   * @return the round winner encoded in the outcome, or -1 if the round continued
+   * **/
+  static int winner(int outcome){return ((outcome>>>12)&0xF)-1;}
+}
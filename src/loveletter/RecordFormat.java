@@ -0,0 +1,77 @@
+package loveletter;
+
+/**
+ * The binary format for recording games of LoveLetter.
+ * A record file starts with a 16 byte header: 
+ * the magic bytes "LLGR", a version byte, 3 reserved bytes and the number of games as a little endian long.
+ * The games follow, each written as:
+ * <ul>
+ * <li>1 byte: the number of players</li>
+ * <li>1 byte: the number of rounds</li>
+ * <li>for each round: 
+ *   8 bytes for the deal (the 16 card codes of the deck, 4 bits each, as a little endian long, first card in the low bits),
+ *   1 byte for the number of actions, 1 byte for each action and 1 byte for the winner of the round</li>
+ * </ul>
+ * An action is stored as its card's ordinal in bits 5-7, its target in bits 3-4 
+ * (0 for cards without a target) and the ordinal of its guess in bits 0-2 (0 if there is no guess).
+ * The player of each action is not stored, as it is the next player of the game being replayed.
+ * Card codes are a card's value, so the deal can be decoded without the engine.
+ * **/
+public final class RecordFormat{
+
+  /**The magic bytes at the start of a record file, "LLGR" read as a little endian int**/
+  public static final int MAGIC = 0x52474C4C;
+  /**The version of the format**/
+  public static final int VERSION = 1;
+  /**The size of the file header in bytes**/
+  public static final int HEADER = 16;
+  /**The largest possible size of a game record in bytes: 
+   * the 2 byte game header and at most 13 rounds of an 8 byte deal, an action count, 16 actions and a winner**/
+  public static final int MAX_GAME = 2+13*(8+1+16+1);
+
+  private RecordFormat(){}
+
+  /**
+   * Encodes an action as a byte.
+   * @param act the action
+   * @return the code of the action, between 0 and 255
+   * **/
+  public static int encode(Action act){
+    int target = act.target()==-1?0:act.target();
+    int guess = act.guess()==null?0:act.guess().ordinal();
+    return (act.card().ordinal()<<5) | (target<<3) | guess;
+  }
+
+  /**
+   * Decodes an action.
+   * @param code the code of the action
+   * @param player the player performing the action
+   * @return the action, or null if the code does not describe a valid action
+   * **/
+  public static Action decode(int code, int player){
+    Card card = PackedState.CARDS[(code>>>5)&0x7];
+    int target = (code>>>3)&0x3;
+    int guess = code&0x7;
+    switch(card){
+      case HANDMAID:
+      case COUNTESS:
+      case PRINCESS: 
+        if(target!=0) return null;
+        target = -1;
+        break;
+      default:
+    }
+    return Action.of(card, player, target, guess==0?null:PackedState.CARDS[guess]);
+  }
+
+  /**
+   * Decodes a deal
+   * @param deal the 8 bytes of a deal, as a long
+   * @param deck an array of 16 cards, to be overwritten with the deck
+   * @return the deck array
+   * **/
+  public static Card[] decode(long deal, Card[] deck){
+    for(int i = 0; i<16; i++) deck[i] = PackedState.card((int)(deal>>>(i<<2))&0xF);
+    return deck;
+  }
+}
@@ -0,0 +1,86 @@
+package loveletter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends game records to a file in the RecordFormat, through memory mapped segments of the file.
+ * Games are copied straight into the mapped segment, so writing allocates nothing,
+ * and the operating system writes the pages back to disk in the background.
+ * The writer may be shared between threads; games are appended in the order they are written.
+ * **/
+public class RecordWriter implements Closeable{
+
+  private static final long SEGMENT = 64L<<20; //the size of each mapped segment
+
+  private FileChannel channel;
+  private MappedByteBuffer segment;
+  private long segmentStart; //the position of the segment in the file
+  private long games; //the number of games written
+
+  /**
+   * Creates a record file, replacing any existing file.
+   * @param file the path of the file
+   * @throws IOException if the file cannot be created
+   * **/
+  public RecordWriter(Path file) throws IOException{
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+      StandardOpenOption.READ, StandardOpenOption.WRITE);
+    map(0);
+    segment.putInt(RecordFormat.MAGIC);
+    segment.put((byte)RecordFormat.VERSION);
+    segment.position(RecordFormat.HEADER);
+  }
+
+  private void map(long start) throws IOException{
+    segmentStart = start;
+    segment = channel.map(FileChannel.MapMode.READ_WRITE, start, SEGMENT);
+    segment.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Appends a game record.
+   * @param record the bytes of the game, in the RecordFormat
+   * @param length the number of bytes in the record
+   * @throws IOException if the file cannot be extended
+   * @throws IllegalStateException if the writer is closed
+   * **/
+  public synchronized void write(byte[] record, int length) throws IOException{
+    if(segment==null) throw new IllegalStateException("Writer is closed");
+    if(segment.remaining()<length) map(segmentStart+segment.position());
+    segment.put(record, 0, length);
+    games++;
+  }
+
+  /**
+   * @return the number of games written
+   * **/
+  public synchronized long games(){return games;}
+
+  /**
+   * @return the number of bytes written, including the header
+   * **/
+  public synchronized long size(){return segment==null?0:segmentStart+segment.position();}
+
+  /**
+   * Writes the number of games to the header, and truncates the file to the records written.
+   * @throws IOException if the file cannot be written
+   * **/
+  public synchronized void close() throws IOException{
+    if(segment==null) return;
+    long size = segmentStart+segment.position();
+    segment.force();
+    segment = null;
+    ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    count.putLong(0, games);
+    channel.write(count, 8);
+    channel.truncate(size);
+    channel.close();
+  }
+}
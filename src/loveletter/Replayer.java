@@ -0,0 +1,285 @@
+package loveletter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays recorded games through the game engine, without agents, to verify that the engine
+ * still follows the rules the games were recorded under.
+ * Every recorded action must be legal, every round must end after its recorded actions 
+ * with the recorded winner, and every game must be over after its recorded rounds, 
+ * with each player's score equal to the number of rounds they won.
+ * The record file is split at game boundaries into chunks, which are memory mapped and
+ * replayed in parallel, and the replay allocates nothing per game.
+ * **/
+public class Replayer{
+
+  private static final long CHUNK = 16L<<20; //the approximate size of the chunks replayed in parallel
+
+  private State[] games = new State[5]; //the game state for each number of players, reused between games
+  private Outcome outcome = new Outcome();
+  private int[] wins = new int[4]; //the rounds won by each player in the current game
+  private long gameCount;
+  private long rounds;
+  private long actions;
+  private long failures;
+  private String firstFailure;
+  private long firstFailureGame = Long.MAX_VALUE; //the index of the game of the first failure
+
+  /**
+   * Creates a replayer with no games replayed
+   * **/
+  public Replayer(){}
+
+  /**
+   * Replays every game in a record file, using every available processor.
+   * @param file the path of the file
+   * @throws IOException if the file cannot be read, or is not a record file
+   * **/
+  public void replay(Path file) throws IOException{
+    replay(file, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Replays every game in a record file.
+   * Games are numbered in the order of the file, following any games already replayed.
+   * @param file the path of the file
+   * @param threads the number of threads replaying chunks of the file
+   * @throws IOException if the file cannot be read, or is not a record file
+   * **/
+  public void replay(Path file, int threads) throws IOException{
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+      long size = channel.size();
+      if(size<RecordFormat.HEADER) throw new IOException("Not a game record file");
+      ByteBuffer header = map(channel, 0, RecordFormat.HEADER);
+      if(header.getInt(0)!=RecordFormat.MAGIC)
+        throw new IOException("Not a game record file");
+      if(header.get(4)!=RecordFormat.VERSION)
+        throw new IOException("Unsupported record version "+header.get(4));
+      long expected = header.getLong(8);
+      long first = gameCount;
+      List<long[]> chunks = split(channel, size, first);
+      ExecutorService pool = Executors.newFixedThreadPool(threads);
+      List<Future<Replayer>> parts = new ArrayList<>();
+      for(long[] chunk: chunks)
+        parts.add(pool.submit(() -> {
+          Replayer part = new Replayer();
+          part.replay(map(channel, chunk[0], chunk[1]-chunk[0]), chunk[2]);
+          return part;
+        }));
+      pool.shutdown();
+      try{
+        for(Future<Replayer> part: parts) merge(part.get());
+      }catch(InterruptedException e){
+        pool.shutdownNow();
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while replaying", e);
+      }catch(ExecutionException e){
+        pool.shutdownNow();
+        throw new IOException("Replay failed", e.getCause());
+      }
+      if(gameCount-first!=expected)
+        fail(gameCount, "File header records "+expected+" games, but "+(gameCount-first)+" were found");
+    }
+  }
+
+  private static MappedByteBuffer map(FileChannel channel, long start, long length) throws IOException{
+    MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+    in.order(ByteOrder.LITTLE_ENDIAN);
+    return in;
+  }
+
+  /**
+   * Splits a record file into chunks of whole games, by skipping over the games.
+   * A malformed or truncated game ends the last chunk, and is recorded as a failure.
+   * @return the start and end position of each chunk, and the index of its first game
+   * **/
+  private List<long[]> split(FileChannel channel, long size, long firstGame) throws IOException{
+    List<long[]> chunks = new ArrayList<>();
+    long start = RecordFormat.HEADER;
+    long pos = start;
+    long game = firstGame;
+    long chunkGame = game;
+    ByteBuffer in = null;
+    long windowStart = 0;
+    while(pos<size){
+      if(in==null || pos+RecordFormat.MAX_GAME>windowStart+in.limit() && windowStart+in.limit()<size){
+        windowStart = pos;
+        in = map(channel, pos, Math.min(CHUNK+RecordFormat.MAX_GAME, size-pos));
+      }
+      int length = gameLength(in, (int)(pos-windowStart));
+      if(length<0){
+        fail(game, "Game "+game+" is truncated or malformed");
+        break;
+      }
+      pos += length;
+      game++;
+      if(pos-start>=CHUNK){
+        chunks.add(new long[]{start, pos, chunkGame});
+        start = pos;
+        chunkGame = game;
+      }
+    }
+    if(pos>start) chunks.add(new long[]{start, pos, chunkGame});
+    return chunks;
+  }
+
+  /**
+   * @return the length of the game starting at the given position, or -1 if it is truncated or malformed.
+   * **/
+  private static int gameLength(ByteBuffer in, int start){
+    int limit = in.limit();
+    if(start+2>limit) return -1;
+    int num = in.get(start);
+    if(num<2 || num>4) return -1;
+    int roundCount = in.get(start+1)&0xFF;
+    int pos = start+2;
+    for(int r = 0; r<roundCount; r++){
+      if(pos+9>limit) return -1;
+      pos += 9+(in.get(pos+8)&0xFF)+1;
+    }
+    return pos>limit?-1:pos-start;
+  }
+
+  /**
+   * Replays every game of a buffer of whole games
+   * @param in the buffer, positioned at the start of a game
+   * @param firstGame the index of the first game in the buffer
+   * **/
+  private void replay(ByteBuffer in, long firstGame){
+    gameCount = firstGame;
+    while(in.hasRemaining()) replayGame(in, gameCount++);
+    gameCount -= firstGame;
+  }
+
+  /**
+   * Replays the next game of a buffer, which must hold the whole game
+   * @param in the buffer, positioned at the start of a game
+   * @param game the index of the game
+   * **/
+  private void replayGame(ByteBuffer in, long game){
+    int num = in.get();
+    int roundCount = in.get()&0xFF;
+    State state = games[num];
+    if(state==null) state = games[num] = new State(num);
+    state.newGame();
+    for(int p = 0; p<num; p++) wins[p] = 0;
+    boolean legal = true;
+    for(int r = 0; r<roundCount; r++){
+      state.newRound(in.getLong());
+      int count = in.get()&0xFF;
+      rounds++;
+      for(int k = 0; k<count; k++){
+        int code = in.get()&0xFF;
+        if(!legal) continue;//skip the rest of a game that has diverged
+        actions++;
+        if(state.roundOver()){
+          legal = fail(game, "Game "+game+", round "+r+": the round ended before action "+k);
+          continue;
+        }
+        try{
+          Card drawn = state.drawCard();
+          state.play(RecordFormat.decode(code, state.nextPlayer()), drawn, outcome);
+        }catch(IllegalActionException e){
+          legal = fail(game, "Game "+game+", round "+r+", action "+k+" ("+RecordFormat.decode(code, state.nextPlayer())+"): "+e.getMessage());
+        }
+      }
+      int winner = in.get();
+      if(winner<0 || winner>=num){
+        legal = fail(game, "Game "+game+", round "+r+" has winner "+winner);
+        continue;
+      }
+      wins[winner]++;
+      if(!legal) continue;
+      if(!state.roundOver())
+        legal = fail(game, "Game "+game+", round "+r+" did not end after its "+count+" actions");
+      else if(state.roundWinner()!=winner)
+        legal = fail(game, "Game "+game+", round "+r+" was won by "+state.roundWinner()+", but recorded for "+winner);
+    }
+    if(legal){
+      for(int p = 0; p<num; p++)
+        if(state.score(p)!=wins[p])
+          legal = fail(game, "Game "+game+": player "+p+" scored "+state.score(p)+", but won "+wins[p]+" recorded rounds");
+      if(legal && !state.gameOver())
+        fail(game, "Game "+game+" is not over after its "+roundCount+" rounds");
+    }
+  }
+
+  //records a failure, keeping the description of the earliest, and returns false
+  private boolean fail(long game, String failure){
+    failures++;
+    if(game<firstFailureGame){
+      firstFailureGame = game;
+      firstFailure = failure;
+    }
+    return false;
+  }
+
+  //adds the counts of a replayer of part of the file
+  private void merge(Replayer part){
+    gameCount += part.gameCount;
+    rounds += part.rounds;
+    actions += part.actions;
+    failures += part.failures;
+    if(part.firstFailureGame<firstFailureGame){
+      firstFailureGame = part.firstFailureGame;
+      firstFailure = part.firstFailure;
+    }
+  }
+
+  /**
+   * @return the number of games replayed
+   * **/
+  public long games(){return gameCount;}
+
+  /**
+   * @return the number of rounds replayed
+   * **/
+  public long rounds(){return rounds;}
+
+  /**
+   * @return the number of actions replayed
+   * **/
+  public long actions(){return actions;}
+
+  /**
+   * @return the number of failed checks, which is 0 if every game was verified
+   * **/
+  public long failures(){return failures;}
+
+  /**
+   * @return a description of the earliest failed check, or null if there were none
+   * **/
+  public String firstFailure(){return firstFailure;}
+
+  /**
+   * Verifies the record files given as arguments, reporting the replay rate and any failures.
+   * Exits with status 1 if any check fails.
+   * @param args the paths of the record files
+   */
+  public static void main(String[] args) throws IOException{
+    Replayer replayer = new Replayer();
+    long start = System.nanoTime();
+    for(String file: args) replayer.replay(Paths.get(file));
+    double seconds = (System.nanoTime()-start)/1e9;
+    System.out.printf("Replayed %d games, %d rounds, %d actions in %.2fs (%.0f rounds/s)%n",
+      replayer.games(), replayer.rounds(), replayer.actions(), seconds, replayer.rounds()/seconds);
+    if(replayer.failures()>0){
+      System.out.println(replayer.failures()+" checks failed, the first: "+replayer.firstFailure());
+      System.exit(1);
+    }
+    System.out.println("Every game verified");
+  }
+}
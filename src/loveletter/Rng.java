@@ -0,0 +1,44 @@
+package loveletter;
+
+/**
+ * An interface for the random number generators used to shuffle the deck.
+ * Implementations need not be thread safe, as each game uses its own generator.
+ * */
+public interface Rng{
+
+  /**
+   * Produces a uniformly distributed random integer.
+   * @param bound the upper bound (exclusive), which must be positive
+   * @return a random integer between 0 (inclusive) and bound (exclusive)
+   * **/
+  public int nextInt(int bound);
+
+  /**
+   * Creates a generator backed by a SplittableRandom.
+   * @param random the generator to draw numbers from
+   * @return the generator
+   * **/
+  public static Rng of(java.util.SplittableRandom random){
+    return random::nextInt;
+  }
+
+  /**
+   * Creates a generator backed by a java.util.Random.
+   * Note that a State constructed with a java.util.Random uses the original 200 swap shuffle instead,
+   * so that games played with existing seeds can be reproduced.
+   * @param random the generator to draw numbers from
+   * @return the generator
+   * **/
+  public static Rng of(java.util.Random random){
+    return random::nextInt;
+  }
+
+  /**
+   * Creates a xoshiro256** generator, the fastest of the generators provided.
+   * @param seed the seed of the generator
+   * @return the generator
+   * **/
+  public static Rng xoshiro(long seed){
+    return new Xoshiro256(seed);
+  }
+}
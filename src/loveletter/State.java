@@ -4,21 +4,17 @@ package loveletter;
  * The class comes in two modes, one for the players, which has update operations disabled,
  * and one for the game engine, that can update the state.
  * States of players in the same game will have common data, allowing for an efficient representation.
+ * The data is held in a PackedState of primitives, which every State of the game is a view over.
  * **/
 public class State implements Cloneable{
 
   
   private int player;//the player who observes this outcome, or -1 for the game engine
   private int num; //The number of players in the game
-  private Card[][] discards; //the discarded cards or each player
-  private int[] discardCount; //how many cards each player has discarded
-  private Card[] hand; //the cards players currently hold, or null if the player has been eliminated 
-  private Card[] deck; //the deck of remaining cards
-  private int[] top; //the index of the top of the deck
-  private boolean[][] known; //whether player knows another players card
-  private int[] scores; //the current score of each player
-  private java.util.Random random;
-  private int[] nextPlayer; //the index of the next player to draw a card (using Object reference so value is shared).
+  private PackedState state; //the packed state of the game, shared by every view of the game
+  private java.util.Random random; //the generator for the original 200 swap shuffle, or null
+  private Rng rng; //the generator for the Fisher-Yates shuffle, or null
+  private Card[] dealt; //the reusable deck for the original shuffle
   private Agent[] agents;
 
   /**
@@ -29,35 +25,73 @@ public class State implements Cloneable{
    * @throws IllegalArgumentException if the array is of the wrong size.
    * */
   public State(java.util.Random random, Agent[] agents){
+    this(random, null, agents);
+  }
+
+  /**
+   * Constructor to build the initial state of a game, dealing with a Fisher-Yates shuffle.
+   * This is faster than the original shuffle of State(Random, Agent[]), 
+   * and every order of the deck is equally likely, but the deals differ for the same seed.
+   * First player in the array will always start
+   * @param rng the random number generator for the deals.
+   * @param agents the array of players who start the game (must be of size 2,3 or 4)
+   * @throws IllegalArgumentException if the array is of the wrong size.
+   * */
+  public State(Rng rng, Agent[] agents){
+    this(null, rng, agents);
+  }
+
+  private State(java.util.Random random, Rng rng, Agent[] agents){
     num = agents.length;
     if(num<2 || num>4)
       throw new IllegalArgumentException("incorrect number of agents");
     this.agents = agents;
     this.random = random;
+    this.rng = rng;
     player = -1;
-    scores = new int[num];
+    state = new PackedState(num);
     try{
       newRound();
     }catch(IllegalActionException e){/*unreachable code, do nothing*/}
-    nextPlayer=new int[1];
+  }
+
+  /**
+   * Constructor for the game state of a game whose deals are supplied by the engine, 
+   * such as a recorded game being replayed. No round is dealt, and the players are named by their index.
+   * @param num the number of players (2,3 or 4)
+   * @throws IllegalArgumentException if the number of players is wrong.
+   * */
+  State(int num){
+    if(num<2 || num>4)
+      throw new IllegalArgumentException("incorrect number of agents");
+    this.num = num;
+    player = -1;
+    state = new PackedState(num);
+  }
+
+  //starts a new game, resetting the scores, without dealing
+  void newGame(){
+    state.scores = 0;
+    state.setNextPlayer(0);
+  }
+
+  //starts a new round with the given packed deck
+  void newRound(long deck){
+    state.newRound(deck);
   }
 
   /**
    * Resets state for a new round, with new deck of cards, 
    * and everyone's hand and discards reset.
-   * @throws IllegalActionException if this is a player state.
+   * @throws IllegalActionException if this is a player state, or a state with no generator to deal from.
    * **/
   public void newRound() throws IllegalActionException{
     if(this.player!=-1) throw new IllegalActionException("Operation not permitted in player's state.");
-    deck = Card.deal(random);
-    discards = new Card[num][16];
-    discardCount = new int[num];
-    hand = new Card[num];
-    top = new int[1];
-    known = new boolean[num][num];
-    for(int i = 0; i<num; i++){
-      hand[i] = this.deck[top[0]++];
-      known[i][i] = true;
+    if(rng==null && random==null) throw new IllegalActionException("No generator to deal a new round.");
+    if(rng!=null) state.newRound(PackedState.shuffle(PackedState.DECK, rng));
+    else{
+      if(dealt==null) dealt = new Card[16];
+      state.newRound(PackedState.pack(Card.deal(random, dealt)));
     }
   }
 
@@ -97,22 +131,24 @@ public class State implements Cloneable{
    * @param t the index of the targeted player or -1, of no such target exists
    * @param c the card played 
    * @param drawn the card drawn
-   * @throws IllegalActionException if any of these conditions hold.
+   * @return Legality.LEGAL, or the first of these conditions that holds.
    * **/      
-  private void legalAction(int a, int t, Card c, Card drawn) throws IllegalActionException{
-    if(hand[a]!=c && drawn!=c)
-      throw new IllegalActionException("Player does not hold the played card");
-    if(nextPlayer[0]!=a)//it must be the actors turn
-      throw new IllegalActionException("Wrong player in action");
-    if((hand[a]==Card.COUNTESS || drawn==Card.COUNTESS) && (c==Card.KING || c==Card.PRINCE))//if one of the cards is the countess, a king or prince may not be played.
-      throw new IllegalActionException("Player must play the countess");
+  private Legality check(int a, int t, Card c, Card drawn){
+    Card held = PackedState.card(state.hand(a));
+    if(held!=c && drawn!=c)
+      return Legality.NOT_HELD;
+    if(state.nextPlayer!=a)//it must be the actors turn
+      return Legality.WRONG_PLAYER;
+    if((held==Card.COUNTESS || drawn==Card.COUNTESS) && (c==Card.KING || c==Card.PRINCE))//if one of the cards is the countess, a king or prince may not be played.
+      return Legality.MUST_PLAY_COUNTESS;
     if(t!=-1){//if this action has a target (1,2,3,5,6 cards)
       if(eliminated(t)) //you cannot target an eliminated player
-        throw new IllegalActionException("The action's target is already eliminated");
-      if(c==Card.PRINCE && a==t) return;//a player can always target themselves with the Prince.
+        return Legality.TARGET_ELIMINATED;
+      if(c==Card.PRINCE && a==t) return Legality.LEGAL;//a player can always target themselves with the Prince.
       if(handmaid(t) && (!allHandmaid(a) || c==Card.PRINCE))//you cannot target a player with the handmaid
-        throw new IllegalActionException("The action's target is protected by the handmaid");
+        return Legality.TARGET_PROTECTED;
     } 
+    return Legality.LEGAL;
   }
 
   /**
@@ -128,17 +164,40 @@ public class State implements Cloneable{
    * There are other rules (such as a player not targetting themselves) that is enforced in the Action class.
    * @param act the action to be performed
    * @param drawn the card drawn by the playing agent.
-   * @throws IllegalActionException if any of these conditions hold.
+   * @return true if and only if none of these conditions hold.
    * **/      
   public boolean legalAction(Action act, Card drawn){
-    if(act ==null) return false;
-    try{
-      legalAction(act.player(), act.target(), act.card(), drawn);
-    }
-    catch(IllegalActionException e){return false;}
-    return true;
+    return checkAction(act, drawn)==Legality.LEGAL;
   }
 
+  /**
+   * Checks an action against the same rules as legalAction, reporting which rule is broken.
+   * No exception is constructed, so this may be called freely when searching for a legal action.
+   * @param act the action to be performed
+   * @param drawn the card drawn by the playing agent.
+   * @return Legality.LEGAL if the action is legal, or the rule the action breaks.
+   * **/      
+  public Legality checkAction(Action act, Card drawn){
+    if(act==null) return Legality.NO_ACTION;
+    return check(act.player(), act.target(), act.card(), drawn);
+  }
+
+  /**
+   * Lists every legal action for the player whose turn it is, having drawn the given card.
+   * Each legal action is listed once, ordered by card, then target, then guess.
+   * This respects the same rules as legalAction, 
+   * so every action listed is legal and every legal action is listed.
+   * In a player's state, actions are only listed when it is the observing player's turn.
+   * @param drawn the card drawn by the playing agent.
+   * @param out the buffer to be cleared and filled with the legal actions
+   * @return the number of legal actions
+   * **/
+  public int legalActions(Card drawn, ActionBuffer out){
+    out.clear();
+    if(player!=-1 && player!=state.nextPlayer) return 0;
+    state.legalActions(PackedState.code(drawn), out);
+    return out.size();
+  }
 
   /**
    * Draws a card for a player from the shuffled deck. May only be performed in the game state.
@@ -148,7 +207,7 @@ public class State implements Cloneable{
    * **/
   public Card drawCard() throws IllegalActionException{
     if(player!=-1) throw new IllegalActionException("operation not permitted in player's state.");
-    return deck[top[0]++];
+    return PackedState.card(state.draw());
   }
 
 
@@ -161,141 +220,158 @@ public class State implements Cloneable{
    * @throws IllegalActionAxception if the state is a player state, or if the action is against the rules. 
    ***/
   public String update(Action act, Card card) throws IllegalActionException{
+    Outcome outcome = new Outcome();
+    play(act, card, outcome);
+    return describe(outcome);
+  }
+
+  /**
+   * Executes the given action of a player, recording its outcome without producing any text.
+   * May only be called for non-player states (i.e. the omniscient game engine state)
+   * @param act the action to be performed
+   * @param card the card drawn by the actor
+   * @param outcome the record to be overwritten with the outcome of the action
+   * @throws IllegalActionAxception if the state is a player state, or if the action is against the rules. 
+   ***/
+  public void play(Action act, Card card, Outcome outcome) throws IllegalActionException{
     if(player!= -1)//Actions may only be executed from game states 
       throw new IllegalActionException("Method cannot be called from a player state");
-    int a = act.player();//actor
-    int t = act.target();//target
-    Card c = act.card();
-    discards[a][discardCount[a]++] = c;//put played card on the top of the acting player's discard pile, required for checking actions.
-    try{
-       legalAction(a,t,c,card);
-    }catch(IllegalActionException e){
-      discardCount[a]--;
-      throw e;//reset discard top
-    }
-    if(c==hand[a]){//if the player played the card in their hand, insert the new card into their hand.
-      hand[a]=card;
-      for(int p = 0; p<num; p++)
-        if(p!=a) known[p][a]=false;//rescind players knowledge if a known card was played
-    }
-    String ret = act.toString(name(a), t!=-1?name(t):"");
-    switch(c){
-      case GUARD://actor plays the guard
-        ret+=guardAction(a,t,act.guess());
-        break;
-      case PRIEST:
-        ret+=priestAction(a,t);
-        break;
-      case BARON:
-        ret+=baronAction(a,t);
-        break;
-      case HANDMAID:
-        //no update required
-        break;
-      case PRINCE:
-        ret+= princeAction(t);  
-        break;
-      case KING:
-        ret+= kingAction(a,t);
-        break;
-      case COUNTESS:  
-        //no update required
-        break;
-      case PRINCESS:
-        ret+= princessAction(a);
-        break;
-      default: 
-        throw new IllegalActionException("Illegal Action? Something's gone very wrong");
-    }//end of switch
-    if(roundOver()){//check for round over
-      for(int i = 0; i<num; i++)
-       for(int p = 0; p<num; p++) 
-         known[i][p]=true;
-      int winner = roundWinner();
-      ret+="\nPlayer "+winner+" wins the round.";
-      scores[winner]++;
-      nextPlayer[0] = winner;
-    }
-    else{//set nextPlayer to next noneliminated player
-      nextPlayer[0] = (nextPlayer[0]+1)%num; 
-      while(eliminated(nextPlayer[0])) nextPlayer[0] = (nextPlayer[0]+1)%num; 
-    }
-    return ret;
+    Legality status = checkAction(act, card);
+    if(status!=Legality.LEGAL) throw new IllegalActionException(status);
+    outcome.set(act, state.play(act.player(), act.target(), PackedState.code(act.card()), PackedState.code(act.guess()), PackedState.code(card)));
   }
 
-  private String guardAction(int a, int t, Card guess){
-    if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
-    else if(guess==hand[t]){//correct guess, target eliminated
-      discards[t][discardCount[t]++] = hand[t];
-      hand[t]=null;
-      for(int p = 0; p<num; p++)known[p][t]=true;
-      return "\nPlayer "+name(t)+" had the "+guess+" and is eliminated from the round";
-    } 
-    else return "\nPlayer "+name(t)+" does not have the "+guess;
-  }
-
-  private String priestAction(int a, int t){
-    if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
-    else known[a][t]=true;
-    return "\nPlayer "+name(a)+" sees player "+name(t)+"'s card.";
-  }
-
-  private String baronAction(int a, int t){
-    if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
-    int elim = -1;
-    if(hand[a].value()>hand[t].value()) elim = t;
-    else if(hand[a].value()<hand[t].value()) elim = a;
-    if(elim!=-1){
-      discards[elim][discardCount[elim]++] = hand[elim];
-      hand[elim]=null;
-      for(int p = 0; p<num; p++) known[p][elim]=true;
-      return "\nPlayer "+name(elim)+" holds the lesser card: "+discards[elim][discardCount[elim]-1]+", and is eliminated";
-    }
-    known[a][t]=true;
-    known[t][a]=true;
-    return "\n Both players hold the same card, and neither is eliminated.";
+  /**
+   * Produces a plain English description of an outcome, using the names of the agents in this game.
+   * @param outcome the outcome of an action in this game
+   * @return the description
+   * **/
+  public String describe(Outcome outcome){
+    String[] names = new String[num];
+    for(int i = 0; i<num; i++) names[i] = name(i);
+    return outcome.toString(names);
+  }
+
+  /**
+   * Executes the given action of a player, recording how to undo it.
+   * Unlike update, no description of the action is produced,
+   * so that searches may apply and undo actions without copying the state.
+   * May only be called for non-player states (i.e. the omniscient game engine state)
+   * @param act the action to be performed
+   * @param card the card drawn by the actor
+   * @return a record that restores the state prior to the action when passed to undo
+   * @throws IllegalActionException if the state is a player state, or if the action is against the rules. 
+   ***/
+  public Undo apply(Action act, Card card) throws IllegalActionException{
+    Undo undo = new Undo();
+    apply(act, card, undo);
+    return undo;
+  }
+
+  /**
+   * Executes the given action of a player, recording how to undo it in an existing record.
+   * May only be called for non-player states (i.e. the omniscient game engine state)
+   * @param act the action to be performed
+   * @param card the card drawn by the actor
+   * @param undo the record to be overwritten with the state prior to the action
+   * @throws IllegalActionException if the state is a player state, or if the action is against the rules. 
+   ***/
+  public void apply(Action act, Card card, Undo undo) throws IllegalActionException{
+    if(player!= -1)//Actions may only be executed from game states 
+      throw new IllegalActionException("Method cannot be called from a player state");
+    Legality status = checkAction(act, card);
+    if(status!=Legality.LEGAL) throw new IllegalActionException(status);
+    undo.save(state);
+    state.play(act.player(), act.target(), PackedState.code(act.card()), PackedState.code(act.guess()), PackedState.code(card));
   }
 
-  //handmaid action requires no update
+  /**
+   * Records the current state of the round, so that it can later be restored with undo.
+   * This allows card draws, as well as actions, to be undone.
+   * @param undo the record to be overwritten with the current state
+   * @throws IllegalActionException if the state is a player state.
+   ***/
+  public void save(Undo undo) throws IllegalActionException{
+    if(player!=-1) throw new IllegalActionException("Operation not permitted in player's state.");
+    undo.save(state);
+  }
 
-  private String princeAction(int t){
-    discards[t][discardCount[t]++] = hand[t];
-    if(hand[t]==Card.PRINCESS){
-      hand[t]=null;
-      for(int p = 0; p<num; p++) known[p][t]=true;
-      return "\nPlayer "+name(t)+" discarded the Princess and is eliminated.";
+  /**
+   * Restores the state recorded by apply or save, 
+   * undoing every action and draw since the record was made.
+   * The record must have been made in the current round of this game.
+   * @param undo the record to restore
+   * @throws IllegalActionException if the state is a player state.
+   ***/
+  public void undo(Undo undo) throws IllegalActionException{
+    if(player!=-1) throw new IllegalActionException("Operation not permitted in player's state.");
+    undo.restore(state);
+  }
+
+  /**
+   * Creates a game state for searching from this player's point of view, in which the cards the player cannot see
+   * are replaced by the given cards, such as a sample of the cards the player has not seen.
+   * The new state shares nothing with this game, and can be played with play, apply and undo until the round is over,
+   * but cannot deal a new round. Its players are named by their index.
+   * @param hands the card held by each player, where the cards of eliminated players are ignored
+   * @param deck the cards remaining in the deck, from the top, which must number deckSize()
+   * @return the new game state
+   * @throws IllegalActionException if this is a game state
+   * @throws IllegalArgumentException if the cards contradict what the player has seen:
+   * a card the player knows is different, or the cards are not those in unseenCards.
+   * **/
+  public State determinise(Card[] hands, Card[] deck) throws IllegalActionException{
+    if(player==-1) throw new IllegalActionException("Method cannot be called from a game state");
+    if(hands.length!=num || deck.length!=deckSize()) throw new IllegalArgumentException("Wrong number of cards");
+    int[] counts = new int[9];//the unseen cards, less those given
+    for(Card c: unseenCards()) counts[PackedState.code(c)]++;
+    State s = new State(num);
+    PackedState d = s.state;
+    d.copyFrom(state);
+    for(int p = 0; p<num; p++){
+      if(state.eliminated(p)) continue;
+      Card known = getCard(p);
+      if(hands[p]==null || (known!=null && known!=hands[p])) throw new IllegalArgumentException("Player "+p+" holds the "+known);
+      d.setHand(p, PackedState.code(hands[p]));
+      counts[PackedState.code(hands[p])]--;
     }
-    hand[t]=deck[top[0]++];
-    for(int p =0; p<num;p++) 
-      if(p!=t)known[p][t]=false;
-    return "\nPlayer "+name(t)+" discards the "+discards[t][discardCount[t]-1]+".";
+    d.deck = 0;//the cards already drawn are not revealed
+    for(int i = 0; i<deck.length; i++){
+      if(deck[i]==null) throw new IllegalArgumentException("The deck has an empty card");
+      d.deck |= ((long)PackedState.code(deck[i]))<<((state.top+i)<<2);
+      counts[PackedState.code(deck[i])]--;
+    }
+    for(int c: counts)
+      if(c!=0) throw new IllegalArgumentException("The cards are not those unseen");
+    return s;
   }
 
-  private String kingAction(int a, int t){
-    if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";
-    known[a][t]=true;
-    known[t][a]=true;
-    Card tmp = hand[a];
-    hand[a] = hand[t];
-    hand[t] = tmp;
-    return "\nPlayer "+name(a)+" and player "+name(t)+" swap cards.";
+  /**
+   * Gives a 64 bit Zobrist hash of the position, kept up to date by every draw and action.
+   * The hash covers every hand, the cards in each discard pile in order (and so the handmaid's protection),
+   * the number of cards drawn, who knows whose card, and the next player.
+   * It does not cover the scores, or the order of the cards left in the deck, which are hashed as the cards not yet seen in a hand or discard pile.
+   * A player's view hashes the hands it cannot see as hidden, and so hashes alike for every deal of those cards.
+   * @return the hash, in constant time for the game state and in time linear in the number of players for a player's view
+   * **/
+  public long hash(){
+    return player==-1?state.hash:state.viewHash(player);
   }
 
-  //countess action not required
-  
-  private String princessAction(int a){
-    discards[a][discardCount[a]++] = hand[a];
-    hand[a]=null;
-    for(int p = 0; p< num; p++) known[p][a]=true;
-    String outcome =  "\nPlayer "+name(a)+" played the Princess and is eliminated.";
-    outcome += "\n Player "+name(a)+" was also holding the "+discards[a][discardCount[a]-1]+".";
-    return outcome;
+  /**
+   * Gives a hash of the position that is the same for positions that differ only by the order of the seats: 
+   * the seats are renumbered in turn order from the next player, who then has the move in every such position.
+   * As with hash(), identical cards are interchangeable and a player's view hides the hands it cannot see.
+   * The hash is computed afresh, in time linear in the number of cards played.
+   * @return the canonical hash
+   * **/
+  public long canonicalHash(){
+    return state.hash(state.nextPlayer, player);
   }
 
+  //the packed state of the game, for the engine's own use
+  PackedState packed(){return state;}
+
   /**
    * returns the index of the observing player, or -1 for perfect information.
    * @return the index of the observing player, or -1 for perfect information.
@@ -310,10 +386,10 @@ public class State implements Cloneable{
   public java.util.Iterator<Card> getDiscards(int player){
     return new java.util.Iterator<Card>(){
       int p=player;
-      int top=discardCount[player];
+      int top=state.discardCount(player);
       public boolean hasNext(){return top>0;}
       public Card next() throws java.util.NoSuchElementException{
-        if(hasNext()) return discards[p][--top];
+        if(hasNext()) return PackedState.card(state.discard(p, --top));
         else throw new java.util.NoSuchElementException();
       }
     };
@@ -326,7 +402,7 @@ public class State implements Cloneable{
    * @throws ArrayIndexoutOfBoundsException if the playerIndex is out of range.
    * **/
   public Card getCard(int playerIndex){
-    if(player==-1 || known[player][playerIndex]) return hand[playerIndex];
+    if(player==-1 || state.knows(player, playerIndex)) return PackedState.card(state.hand(playerIndex));
     else return null;
   }
 
@@ -337,7 +413,7 @@ public class State implements Cloneable{
    * @throws ArrayIndexoutOfBoundsException if the playerIndex is out of range.
    * **/
   public boolean eliminated(int player){
-    return hand[player]==null;
+    return state.eliminated(player);
   }
 
   /**
@@ -345,7 +421,7 @@ public class State implements Cloneable{
    * @return the index of the next player to play
    * **/
   public int nextPlayer(){
-    return nextPlayer[0];
+    return state.nextPlayer;
   }
 
   /**
@@ -361,19 +437,16 @@ public class State implements Cloneable{
    * @return true if and only if the index corresponds to a player who is protected by the handmaid
    * **/
   public boolean handmaid(int player){
-    if(player<0 || player >=num || discardCount[player]==0) return false;
-    return discards[player][discardCount[player]-1]==Card.HANDMAID;
+    return state.handmaid(player);
   }
 
   //helper method to check if every other player is protected by the handmaid
   private boolean allHandmaid(int player){
-    boolean noAction = true;
-    for(int i = 0; i<num; i++)
-      noAction = noAction && (eliminated(i) || handmaid(i) || i==player); 
-    return noAction;
+    return state.allHandmaid(player);
   }
 
   private String name(int playerIndex){
+    if(agents==null) return ""+playerIndex;
     return agents[playerIndex].toString()+"("+playerIndex+")";
   }
   /**
@@ -381,7 +454,7 @@ public class State implements Cloneable{
    * @return the number of cards not in players hands or discarded.
    * **/
   public int deckSize(){
-    return 16-top[0];
+    return state.deckSize();
   }
 
   /**
@@ -390,14 +463,12 @@ public class State implements Cloneable{
    * @return an array of all cards not in the discard piles
    ***/
   public Card[] unseenCards(){
-    int alive = 0;
-    for(int p = 0; p<num; p++)
-      if(!eliminated(p))alive++;
+    int alive = state.alive();
     Card[] rem = new Card[deckSize()+alive];
     int aCount = 0;
     for(int p = 0; p<num; p++)
-      if(!eliminated(p)) rem[aCount++]=hand[p];
-    for(int i = 0; i<deckSize(); i++) rem[alive+i] = deck[top[0]+i];
+      if(!eliminated(p)) rem[aCount++]=PackedState.card(state.hand(p));
+    for(int i = 0; i<deckSize(); i++) rem[alive+i] = PackedState.card(state.deckCard(state.top+i));
     java.util.Arrays.sort(rem);
     return rem;
   }
@@ -408,10 +479,7 @@ public class State implements Cloneable{
    * @return true if and only if the round is over
    * **/
   public boolean roundOver(){
-    int remaining = 0;
-    for(int i=0; i<num; i++) 
-      if(!eliminated(i)) remaining++;
-    return remaining==1 || deckSize()<2;
+    return state.roundOver();
   }
 
   /**helper method to determine the winner of the round.
@@ -420,22 +488,7 @@ public class State implements Cloneable{
    * @return the index of the winner, or -1 if the round is not yet over.
    * **/ 
   public int roundWinner(){
-    if(!roundOver()) return -1;
-    int winner=-1;
-    int topCard=-1;
-    int discardValue=-1;
-    for(int p=0; p<num; p++){
-      if(!eliminated(p)){
-        int dv = 0;
-        for(int j=0; j<discardCount[p]; j++) dv+=discards[p][j].value();
-        if(hand[p].value()>topCard || (hand[p].value()==topCard && dv>discardValue)){
-          winner = p;
-          topCard = hand[p].value();
-          discardValue = dv;
-        }
-      }
-    }
-    return winner;
+    return state.roundWinner();
   }
 
   /**
@@ -444,8 +497,8 @@ public class State implements Cloneable{
    * @return the score of the specified player
    * **/
   public int score(int player){
-    if(player<0 || player > num) return 0;
-    return scores[player];}
+    if(player<0 || player >= num) return 0;
+    return state.score(player);}
 
   /**
    * confirms the game is over
@@ -463,7 +516,7 @@ public class State implements Cloneable{
     int threshold = num==4?4:num==3?5:num==2?7:0;//sets the required threshhold for different numbers of players.
     //threshold = 10000;
     for(int p = 0; p<num; p++)
-      if(scores[p]==threshold)return p;
+      if(state.score(p)==threshold)return p;
     return -1;
   }
 
@@ -0,0 +1,112 @@
+package loveletter;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Enforces a deadline on agent callbacks, so that a runaway agent cannot stall the thread playing its game.
+ * Each call is handed to a supervised daemon thread, while the caller waits for its result until the deadline.
+ * A call that overruns is reported by a TimeoutException, and its thread is interrupted and abandoned,
+ * so the caller's thread is never stopped and the game can carry on.
+ * The agent of an abandoned call may be left inconsistent or even still running, so it must not be called again.
+ * A supervisor runs one call at a time, so each thread should use its own supervisor.
+ * **/
+public class Supervisor implements AutoCloseable{
+
+  private long deadline; //the time allowed for each call, in nanoseconds
+  private long abandoned; //the number of calls that overran
+  private boolean closed;
+  private ExecutorService thread; //the supervised thread, created when first needed
+
+  /**
+   * Creates a supervisor
+   * @param deadline the time allowed for each call
+   * @param unit the unit of the deadline
+   * @throws IllegalArgumentException if the deadline is not positive
+   * **/
+  public Supervisor(long deadline, TimeUnit unit){
+    if(deadline<=0) throw new IllegalArgumentException("the deadline must be positive");
+    this.deadline = unit.toNanos(deadline);
+  }
+
+  /**
+   * Runs a call, waiting until it returns or its deadline passes.
+   * @param call the call to run
+   * @return the result of the call
+   * @throws TimeoutException if the deadline passed, in which case the call is abandoned
+   * @throws RuntimeException or Error if the call threw one
+   * @throws IllegalStateException if the call threw a checked exception, or the caller is interrupted while waiting
+   * **/
+  public <T> T call(Callable<T> call) throws TimeoutException{
+    if(closed) throw new IllegalStateException("the supervisor is closed");
+    return handOff(call);
+  }
+
+  /**
+   * Runs a call without a result, waiting until it returns or its deadline passes.
+   * @param call the call to run
+   * @throws TimeoutException if the deadline passed, in which case the call is abandoned
+   * **/
+  public void run(Runnable call) throws TimeoutException{
+    call(() -> {
+      call.run();
+      return null;
+    });
+  }
+
+  //runs the call on the supervised thread, abandoning the thread if the call overruns
+  private <T> T handOff(Callable<T> call) throws TimeoutException{
+    if(thread==null) thread = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "supervised-agent");
+      t.setDaemon(true);
+      return t;
+    });
+    Future<T> result = thread.submit(call);
+    try{
+      return result.get(deadline, TimeUnit.NANOSECONDS);
+    }catch(TimeoutException e){
+      abandon();
+      throw e;
+    }catch(InterruptedException e){
+      abandon();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for an agent", e);
+    }catch(ExecutionException e){
+      Throwable cause = e.getCause();
+      if(cause instanceof RuntimeException) throw (RuntimeException)cause;
+      if(cause instanceof Error) throw (Error)cause;
+      throw new IllegalStateException("An agent failed", cause);
+    }
+  }
+
+  //interrupts the supervised thread, in case the call responds, and leaves it to finish on its own
+  private void abandon(){
+    thread.shutdownNow();
+    thread = null;
+    abandoned++;
+  }
+
+  /**
+   * @return the time allowed for each call, in nanoseconds
+   * **/
+  public long deadline(){return deadline;}
+
+  /**
+   * @return the number of calls that overran
+   * **/
+  public long abandoned(){return abandoned;}
+
+  /**
+   * Stops the supervised thread, once any current call returns.
+   * **/
+  public void close(){
+    closed = true;
+    if(thread!=null) thread.shutdown();
+    thread = null;
+  }
+}
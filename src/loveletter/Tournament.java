@@ -0,0 +1,211 @@
+package loveletter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A round-robin tournament between agents. Every table of 2, 3 and 4 entrants,
+ * in which an entrant may take several seats but at least two entrants play, is
+ * seated in every distinct order, and each seating plays the same number of
+ * games. An entrant in several seats plays each with its own agent, and its
+ * results count once for each seat. All games of the schedule are spread across the worker
+ * threads together, and each is seeded from the master seed and its index, so
+ * the results are identical whatever the number of threads.
+ */
+public class Tournament {
+
+	private List<Supplier<? extends Agent>> entrants;
+	private String[] names;
+	private List<int[]> seatings;
+	private int threads;
+	private long deadline; // the time allowed for each agent callback in nanoseconds, or 0 for no limit
+
+	/**
+	 * Constructs a tournament between the given agents.
+	 * 
+	 * @param entrants a factory for each agent in the tournament, at least 2
+	 * @param threads  the number of worker threads
+	 * @throws IllegalArgumentException if there are fewer than 2 entrants
+	 **/
+	public Tournament(List<Supplier<? extends Agent>> entrants, int threads) {
+		if (entrants.size() < 2)
+			throw new IllegalArgumentException("at least two entrants are required");
+		if (threads < 1)
+			throw new IllegalArgumentException("at least one thread is required");
+		this.entrants = new ArrayList<>(entrants);
+		this.threads = threads;
+		names = new String[entrants.size()];
+		for (int e = 0; e < names.length; e++)
+			names[e] = entrants.get(e).get().toString() + "(" + e + ")";
+		seatings = new ArrayList<>();
+		for (int n = 2; n <= 4; n++)
+			combinations(new int[n], 0, 0);
+	}
+
+	/**
+	 * Constructs a tournament between the given agents, using every available
+	 * processor.
+	 * 
+	 * @param entrants a factory for each agent in the tournament, at least 2
+	 **/
+	public Tournament(List<Supplier<? extends Agent>> entrants) {
+		this(entrants, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Sets a deadline for every agent callback. An entrant that overruns the
+	 * deadline is counted as a timeout, makes random moves for the rest of the
+	 * game, and is replaced by a fresh agent for the next game, so that one
+	 * runaway agent cannot stall the tournament.
+	 * 
+	 * @param deadline the time allowed for each callback, or 0 for no limit
+	 * @param unit     the unit of the deadline
+	 **/
+	public void setMoveDeadline(long deadline, TimeUnit unit) {
+		this.deadline = unit.toNanos(deadline);
+	}
+
+	// adds every seating of every multiset of entrants that extends the table,
+	// except a table of a single entrant playing itself
+	private void combinations(int[] table, int seat, int from) {
+		if (seat == table.length) {
+			if (table[0] != table[seat - 1])
+				permutations(table, 0);
+			return;
+		}
+		for (int e = from; e < names.length; e++) {
+			table[seat] = e;
+			combinations(table, seat + 1, e);
+		}
+	}
+
+	// adds every distinct order of the table, by swapping each entrant into each
+	// seat, once for each entrant
+	private void permutations(int[] table, int seat) {
+		if (seat == table.length) {
+			seatings.add(table.clone());
+			return;
+		}
+		for (int i = seat; i < table.length; i++) {
+			if (repeated(table, seat, i))
+				continue;
+			swap(table, seat, i);
+			permutations(table, seat + 1);
+			swap(table, seat, i);
+		}
+	}
+
+	// whether the entrant in seat i also sits in a seat from seat up to i
+	private static boolean repeated(int[] table, int seat, int i) {
+		for (int j = seat; j < i; j++)
+			if (table[j] == table[i])
+				return true;
+		return false;
+	}
+
+	private static void swap(int[] table, int i, int j) {
+		int tmp = table[i];
+		table[i] = table[j];
+		table[j] = tmp;
+	}
+
+	/**
+	 * @return the number of distinct seatings in the schedule
+	 **/
+	public int numSeatings() {
+		return seatings.size();
+	}
+
+	/**
+	 * @param index the index of the seating
+	 * @return the entrant in each seat of the seating
+	 **/
+	public int[] seating(int index) {
+		return seatings.get(index).clone();
+	}
+
+	/**
+	 * Plays the tournament.
+	 * 
+	 * @param masterSeed the seed from which every game's seed is derived
+	 * @param games      the number of games played by each seating
+	 * @return the results of the tournament
+	 * @throws IllegalStateException if a worker fails
+	 **/
+	public TournamentResult run(long masterSeed, int games) {
+		long total = (long) games * seatings.size();
+		List<Worker> workers = BatchRunner.runWorkers(threads, total, Worker::new, (w, g) -> w.play(masterSeed, g, games));
+		TournamentResult result = new TournamentResult(names);
+		for (Worker w : workers) {
+			result.merge(w.result);
+			if (w.supervisor != null)
+				w.supervisor.close();
+		}
+		return result;
+	}
+
+	// the agents, results and environment of a worker thread
+	private class Worker {
+		// each entrant's agent for each of its seats at a table, created on first use
+		private Agent[][] agents = new Agent[names.length][4];
+		// the table for each size of game, reused between games
+		private Agent[][] tables = { null, null, new Agent[2], new Agent[3], new Agent[4] };
+		private TournamentResult result = new TournamentResult(names);
+		private LoveLetter env = new LoveLetter((Rng) null, null);
+		private Supervisor supervisor;
+
+		private Worker() {
+			if (deadline > 0) {
+				supervisor = new Supervisor(deadline, TimeUnit.NANOSECONDS);
+				env.setSupervisor(supervisor);
+			}
+		}
+
+		private void play(long masterSeed, long game, int games) {
+			int[] seating = seatings.get((int) (game / games));
+			Agent[] table = tables[seating.length];
+			for (int p = 0; p < seating.length; p++) {
+				int e = seating[p], copy = copy(seating, p);
+				if (agents[e][copy] == null)
+					agents[e][copy] = entrants.get(e).get();
+				table[p] = agents[e][copy];
+			}
+			result.record(seating, BatchRunner.playGame(masterSeed, game, table, env));
+			boolean[] timedOut = new boolean[names.length];
+			for (int p = 0; p < seating.length; p++)
+				if (env.timedOut(p)) {
+					if (!timedOut[seating[p]])
+						result.timeout(seating[p]);
+					timedOut[seating[p]] = true;
+					agents[seating[p]][copy(seating, p)] = null;
+				}
+		}
+
+		// the number of seats before p taken by the same entrant
+		private int copy(int[] seating, int p) {
+			int copy = 0;
+			for (int q = 0; q < p; q++)
+				if (seating[q] == seating[p])
+					copy++;
+			return copy;
+		}
+	}
+
+	/**
+	 * Runs a tournament between the agents provided.
+	 * 
+	 * @param args the number of games per seating (default 100) and an optional
+	 *             master seed
+	 */
+	public static void main(String[] args) {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : new java.util.Random().nextLong();
+		List<Supplier<? extends Agent>> entrants = Arrays.asList(agents.RandomAgent::new, agents.TimsAgent::new);
+		Tournament tournament = new Tournament(entrants);
+		System.out.println(tournament.numSeatings() + " seatings, " + games + " games each, seed " + seed);
+		System.out.println(tournament.run(seed, games));
+	}
+}
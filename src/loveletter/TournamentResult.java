@@ -0,0 +1,204 @@
+package loveletter;
+
+/**
+ * The aggregate results of a tournament, for each entrant overall, by seat and by table size.
+ * Every field is an integer count, so merging the results of worker threads is exact.
+ * **/
+public class TournamentResult{
+
+  private static final double Z = 1.96; //the normal quantile for 95% confidence intervals
+
+  private String[] names; //the name of each entrant
+  private long[] games; //the games played by each entrant
+  private long[] wins; //the games won by each entrant
+  private long[][] seatGames; //the games played by each entrant in each seat
+  private long[][] seatWins; //the games won by each entrant in each seat
+  private long[][] sizeGames; //the games played by each entrant at each table size
+  private long[][] sizeWins; //the games won by each entrant at each table size
+  private long errors; //the games abandoned because of an error
+  private long[] timeouts; //the games in which each entrant overran a deadline
+
+  /**
+   * Creates an empty result
+   * @param names the name of each entrant
+   * **/
+  public TournamentResult(String[] names){
+    int n = names.length;
+    this.names = names.clone();
+    games = new long[n];
+    wins = new long[n];
+    seatGames = new long[n][4];
+    seatWins = new long[n][4];
+    sizeGames = new long[n][5];
+    sizeWins = new long[n][5];
+    timeouts = new long[n];
+  }
+
+  /**
+   * Records the scores of a completed game.
+   * The winner is the first seat with the highest score.
+   * @param seating the entrant in each seat
+   * @param scoreboard the scores of each seat, or null if the game was abandoned
+   * **/
+  public void record(int[] seating, int[] scoreboard){
+    if(scoreboard==null){
+      errors++;
+      return;
+    }
+    int n = seating.length;
+    int winner = 0;
+    for(int p = 1; p<n; p++)
+      if(scoreboard[p]>scoreboard[winner]) winner = p;
+    for(int p = 0; p<n; p++){
+      int e = seating[p];
+      games[e]++;
+      seatGames[e][p]++;
+      sizeGames[e][n]++;
+      if(p==winner){
+        wins[e]++;
+        seatWins[e][p]++;
+        sizeWins[e][n]++;
+      }
+    }
+  }
+
+  /**
+   * Records that an entrant overran a deadline in a game, and made random moves for the rest of it.
+   * @param entrant the index of the entrant
+   * **/
+  public void timeout(int entrant){
+    timeouts[entrant]++;
+  }
+
+  /**
+   * Adds the results of another part of the same tournament to these results.
+   * @param other the results to add
+   * **/
+  public void merge(TournamentResult other){
+    errors += other.errors;
+    for(int e = 0; e<names.length; e++){
+      games[e] += other.games[e];
+      wins[e] += other.wins[e];
+      timeouts[e] += other.timeouts[e];
+      for(int p = 0; p<4; p++){
+        seatGames[e][p] += other.seatGames[e][p];
+        seatWins[e][p] += other.seatWins[e][p];
+      }
+      for(int n = 0; n<5; n++){
+        sizeGames[e][n] += other.sizeGames[e][n];
+        sizeWins[e][n] += other.sizeWins[e][n];
+      }
+    }
+  }
+
+  /**
+   * @return the number of entrants
+   * **/
+  public int numEntrants(){return names.length;}
+
+  /**
+   * @param entrant the index of the entrant
+   * @return the name of the entrant
+   * **/
+  public String name(int entrant){return names[entrant];}
+
+  /**
+   * @return the number of games abandoned because of an error
+   * **/
+  public long errors(){return errors;}
+
+  /**
+   * @param entrant the index of the entrant
+   * @return the number of games in which the entrant overran a deadline
+   * **/
+  public long timeouts(int entrant){return timeouts[entrant];}
+
+  /**
+   * @param entrant the index of the entrant
+   * @return the number of games the entrant played
+   * **/
+  public long games(int entrant){return games[entrant];}
+
+  /**
+   * @param entrant the index of the entrant
+   * @return the number of games the entrant won
+   * **/
+  public long wins(int entrant){return wins[entrant];}
+
+  /**
+   * @param entrant the index of the entrant
+   * @return the fraction of the entrant's games that it won
+   * **/
+  public double winRate(int entrant){return rate(wins[entrant], games[entrant]);}
+
+  /**
+   * @param entrant the index of the entrant
+   * @return the lower bound of the 95% Wilson score interval for the entrant's win rate
+   * **/
+  public double lowerBound(int entrant){return wilson(wins[entrant], games[entrant], -Z);}
+
+  /**
+   * @param entrant the index of the entrant
+   * @return the upper bound of the 95% Wilson score interval for the entrant's win rate
+   * **/
+  public double upperBound(int entrant){return wilson(wins[entrant], games[entrant], Z);}
+
+  /**
+   * The win rate the entrant would have by chance, given the sizes of the tables it played at.
+   * @param entrant the index of the entrant
+   * @return the expected win rate of an entrant that wins at random
+   * **/
+  public double chanceRate(int entrant){
+    double expected = 0;
+    for(int n = 2; n<5; n++) expected += (double)sizeGames[entrant][n]/n;
+    return games[entrant]==0?0:expected/games[entrant];
+  }
+
+  /**
+   * @param entrant the index of the entrant
+   * @param seat the index of the seat
+   * @return the fraction of the entrant's games in that seat that it won
+   * **/
+  public double seatWinRate(int entrant, int seat){return rate(seatWins[entrant][seat], seatGames[entrant][seat]);}
+
+  /**
+   * @param entrant the index of the entrant
+   * @param seat the index of the seat
+   * @return the number of games the entrant played in that seat
+   * **/
+  public long seatGames(int entrant, int seat){return seatGames[entrant][seat];}
+
+  /**
+   * @param entrant the index of the entrant
+   * @param players the number of players at the table
+   * @return the fraction of the entrant's games at tables of that size that it won
+   * **/
+  public double sizeWinRate(int entrant, int players){return rate(sizeWins[entrant][players], sizeGames[entrant][players]);}
+
+  private static double rate(long wins, long games){return games==0?0:(double)wins/games;}
+
+  private static double wilson(long wins, long games, double z){
+    if(games==0) return 0;
+    double p = (double)wins/games;
+    double z2n = z*z/games;
+    double centre = p+z2n/2;
+    double spread = z*Math.sqrt(p*(1-p)/games+z2n/(4*games));
+    return (centre+spread)/(1+z2n);
+  }
+
+  public String toString(){
+    String str = String.format("%-12s %10s %8s %17s %7s", "Agent", "Games", "Win%", "95% CI", "Chance");
+    for(int p = 0; p<4; p++) str += String.format(" %7s", "Seat "+p);
+    for(int n = 2; n<5; n++) str += String.format(" %7s", n+"P");
+    for(int e = 0; e<names.length; e++){
+      str += String.format("\n%-12s %10d %7.2f%% [%6.2f%%,%6.2f%%] %6.2f%%",
+        names[e], games[e], 100*winRate(e), 100*lowerBound(e), 100*upperBound(e), 100*chanceRate(e));
+      for(int p = 0; p<4; p++) str += String.format(" %6.2f%%", 100*seatWinRate(e, p));
+      for(int n = 2; n<5; n++) str += String.format(" %6.2f%%", 100*sizeWinRate(e, n));
+    }
+    for(int e = 0; e<names.length; e++)
+      if(timeouts[e]>0) str += "\n"+names[e]+" timed out in "+timeouts[e]+" games";
+    if(errors>0) str += "\n"+errors+" games abandoned";
+    return str;
+  }
+}
@@ -0,0 +1,69 @@
+package loveletter;
+
+/**
+ * A fixed-size table of values keyed by 64-bit position hashes, which any number of threads may share without locks.
+ * Each entry stores the value beside the key xored with the value (the lockless hashing of Hyatt and Mann),
+ * so an entry torn by two threads writing at once fails the key check on reading, and reads as a miss rather than a wrong value.
+ * A new entry always replaces the old one in its slot, so the table never grows, and forgets the oldest positions first.
+ * **/
+public final class TranspositionTable{
+
+  private final long[] checks; //the key xored with the value of each entry
+  private final long[] values; //the bits of the value of each entry
+  private final int mask;
+
+  /**
+   * Creates an empty table.
+   * @param bits the base 2 logarithm of the number of entries, each taking 16 bytes
+   * @throws IllegalArgumentException if bits is not between 1 and 30
+   * **/
+  public TranspositionTable(int bits){
+    if(bits<1 || bits>30) throw new IllegalArgumentException("The table must have between 2^1 and 2^30 entries");
+    checks = new long[1<<bits];
+    values = new long[1<<bits];
+    mask = (1<<bits)-1;
+    clear();
+  }
+
+  /**
+   * Looks up the value of a position.
+   * @param key the hash of the position
+   * @return the value stored for the position, or NaN if there is none
+   * **/
+  public double get(long key){
+    int i = index(key);
+    long value = values[i];
+    if((checks[i]^value)!=key) return Double.NaN;
+    return Double.longBitsToDouble(value);
+  }
+
+  /**
+   * Stores the value of a position, replacing whatever was in its slot.
+   * @param key the hash of the position
+   * @param value the value, which must not be NaN
+   * **/
+  public void put(long key, double value){
+    int i = index(key);
+    long bits = Double.doubleToRawLongBits(value);
+    values[i] = bits;
+    checks[i] = key^bits;
+  }
+
+  /**
+   * Empties the table. Not safe while other threads use it.
+   * **/
+  public void clear(){
+    long empty = Double.doubleToRawLongBits(Double.NaN);
+    java.util.Arrays.fill(values, empty);
+    java.util.Arrays.fill(checks, 0);//an empty slot holds NaN, so it reads as a miss whatever the key
+  }
+
+  /**
+   * @return the number of entries in the table
+   * **/
+  public int size(){return mask+1;}
+
+  private int index(long key){
+    return (int)(key^(key>>>32))&mask;
+  }
+}
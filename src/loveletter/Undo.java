@@ -0,0 +1,53 @@
+package loveletter;
+
+/**
+ * A record of the state of a round, used to undo actions applied to a game state.
+ * The record holds a handful of primitives, and may be reused for any number of actions.
+ * Restoring a record undoes every action applied and card drawn since it was taken, 
+ * provided no new round has been dealt.
+ * @see State#apply(Action, Card)
+ * @see State#undo(Undo)
+ **/
+public final class Undo{
+
+  long deck;
+  int top;
+  int hands;
+  int discardCounts;
+  int known;
+  int scores;
+  int nextPlayer;
+  long hash;
+
+  /**
+   * Creates an empty record, to be filled by State.save(Undo) or State.apply(Action, Card, Undo).
+   * **/
+  public Undo(){}
+
+  void save(PackedState s){
+    deck = s.deck;
+    top = s.top;
+    hands = s.hands;
+    discardCounts = s.discardCounts;
+    known = s.known;
+    scores = s.scores;
+    nextPlayer = s.nextPlayer;
+    hash = s.hash;
+  }
+
+  void restore(PackedState s){
+    s.deck = deck;
+    s.top = top;
+    s.hands = hands;
+    s.discardCounts = discardCounts;
+    s.known = known;
+    s.scores = scores;
+    s.nextPlayer = nextPlayer;
+    s.hash = hash;
+    //discard piles only grow, so clearing the cards above each count restores them
+    for(int p = 0; p<4; p++){
+      int n = s.discardCount(p);
+      s.discards[p] &= n==16?-1L:(1L<<(n<<2))-1;
+    }
+  }
+}
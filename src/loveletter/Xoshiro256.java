@@ -0,0 +1,63 @@
+package loveletter;
+
+/**
+ * The xoshiro256** random number generator of Blackman and Vigna.
+ * It is not thread safe, and is not suitable for cryptographic use,
+ * but it is small, fast and has good statistical quality for simulation.
+ * **/
+public final class Xoshiro256 implements Rng{
+
+  private long s0, s1, s2, s3;
+
+  /**
+   * Creates a generator whose state is expanded from the seed with SplitMix64
+   * @param seed the seed of the generator
+   * **/
+  public Xoshiro256(long seed){
+    s0 = splitMix(seed += 0x9E3779B97F4A7C15L);
+    s1 = splitMix(seed += 0x9E3779B97F4A7C15L);
+    s2 = splitMix(seed += 0x9E3779B97F4A7C15L);
+    s3 = splitMix(seed += 0x9E3779B97F4A7C15L);
+  }
+
+  private static long splitMix(long z){
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * @return 64 uniformly distributed random bits
+   * **/
+  public long nextLong(){
+    long result = Long.rotateLeft(s1 * 5, 7) * 9;
+    long t = s1 << 17;
+    s2 ^= s0;
+    s3 ^= s1;
+    s1 ^= s2;
+    s0 ^= s3;
+    s2 ^= t;
+    s3 = Long.rotateLeft(s3, 45);
+    return result;
+  }
+
+  /**
+   * Produces an unbiased random integer with Lemire's multiply and reject method.
+   * @param bound the upper bound (exclusive), which must be positive
+   * @return a random integer between 0 (inclusive) and bound (exclusive)
+   * @throws IllegalArgumentException if bound is not positive
+   * **/
+  public int nextInt(int bound){
+    if(bound<=0) throw new IllegalArgumentException("bound must be positive");
+    long m = (nextLong()>>>32) * bound;
+    long low = m & 0xFFFFFFFFL;
+    if(low<bound){
+      long threshold = (0x100000000L - bound) % bound;
+      while(low<threshold){
+        m = (nextLong()>>>32) * bound;
+        low = m & 0xFFFFFFFFL;
+      }
+    }
+    return (int)(m>>>32);
+  }
+}